@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * <p>
+ * A {@link StreamConsumer} capturing the consumed lines with an explicit memory policy, unlike
+ * {@link CommandLineUtils.StringStreamConsumer} which keeps the whole output in memory:
+ * </p>
+ * <ul>
+ * <li>{@link #headTail(int, int)} keeps the beginning and the end of the output,</li>
+ * <li>{@link #spilling(int)} keeps the output in memory up to a threshold, then in a temporary file,</li>
+ * <li>{@link #counting()} only counts the lines and characters.</li>
+ * </ul>
+ * <p>
+ * Each line is captured followed by the line separator of the platform, as
+ * {@link CommandLineUtils.StringStreamConsumer} does. The captured output is only turned into a string when queried.
+ * Instances are thread-safe, and should be closed once the output is not needed anymore to release the temporary file,
+ * if any.
+ * </p>
+ *
+ * @since 3.5.0
+ */
+public abstract class CapturingStreamConsumer implements StreamConsumer, AutoCloseable {
+
+    private static final String LS = System.getProperty("line.separator", "\n");
+
+    private long lineCount;
+
+    private long charCount;
+
+    /**
+     * @param headChars the number of characters to keep from the beginning of the output
+     * @param tailChars the number of characters to keep from the end of the output
+     * @return a consumer keeping at most <code>headChars + tailChars</code> characters in memory
+     * @throws IllegalArgumentException if a number of characters is negative
+     */
+    public static CapturingStreamConsumer headTail(int headChars, int tailChars) {
+        if (headChars < 0 || tailChars < 0) {
+            throw new IllegalArgumentException(
+                    "headChars and tailChars must not be negative, but were " + headChars + " and " + tailChars);
+        }
+        return new HeadTail(headChars, tailChars);
+    }
+
+    /**
+     * @param thresholdChars the number of characters kept in memory before the output is moved to a temporary file
+     * @return a consumer keeping at most <code>thresholdChars</code> characters in memory
+     * @throws IllegalArgumentException if <code>thresholdChars</code> is negative
+     */
+    public static CapturingStreamConsumer spilling(int thresholdChars) {
+        if (thresholdChars < 0) {
+            throw new IllegalArgumentException("thresholdChars must not be negative, but was " + thresholdChars);
+        }
+        return new Spilling(thresholdChars);
+    }
+
+    /**
+     * @return a consumer keeping no output at all
+     */
+    public static CapturingStreamConsumer counting() {
+        return new Counting();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final synchronized void consumeLine(String line) throws IOException {
+        lineCount++;
+        charCount += line.length() + LS.length();
+        capture(line);
+        capture(LS);
+    }
+
+    /**
+     * @return the number of lines consumed
+     */
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the number of characters consumed, including line separators
+     */
+    public synchronized long getCharCount() {
+        return charCount;
+    }
+
+    /**
+     * @return <code>true</code> if part of the output was dropped
+     */
+    public abstract boolean isTruncated();
+
+    /**
+     * Gets the captured output. If the output was truncated, the omitted part is replaced by a line telling how many
+     * characters were omitted.
+     *
+     * @return the captured output
+     * @throws IOException if the output cannot be read back
+     */
+    public synchronized String getOutput() throws IOException {
+        StringWriter writer = new StringWriter();
+        writeOutputTo(writer);
+        return writer.toString();
+    }
+
+    /**
+     * Writes the captured output without building it as a string, see {@link #getOutput()}.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if the output cannot be read back or written
+     */
+    public abstract void writeOutputTo(Writer writer) throws IOException;
+
+    /**
+     * Releases the resources held, the captured output is not available anymore.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {}
+
+    /**
+     * @return the temporary file holding the output, <code>null</code> if the output is held in memory
+     */
+    File getSpillFile() {
+        return null;
+    }
+
+    /**
+     * Captures the given characters.
+     *
+     * @param s the characters
+     * @throws IOException if an I/O error occurs
+     */
+    abstract void capture(String s) throws IOException;
+
+    /**
+     * Keeps the first and the last characters of the output.
+     */
+    private static final class HeadTail extends CapturingStreamConsumer {
+
+        private final StringBuilder head;
+
+        private final int headChars;
+
+        /**
+         * Ring buffer of the last characters.
+         */
+        private final char[] tail;
+
+        /**
+         * The number of characters passed to the ring buffer.
+         */
+        private long tailCount;
+
+        HeadTail(int headChars, int tailChars) {
+            this.headChars = headChars;
+            this.head = new StringBuilder(Math.min(headChars, 8192));
+            this.tail = new char[tailChars];
+        }
+
+        @Override
+        void capture(String s) {
+            int offset = 0;
+            if (head.length() < headChars) {
+                offset = Math.min(s.length(), headChars - head.length());
+                head.append(s, 0, offset);
+            }
+
+            int length = s.length() - offset;
+            if (length > 0 && tail.length > 0) {
+                // only the last characters can remain in the ring
+                int start = offset + Math.max(0, length - tail.length);
+                int position = (int) ((tailCount + start - offset) % tail.length);
+                int first = Math.min(s.length() - start, tail.length - position);
+                s.getChars(start, start + first, tail, position);
+                s.getChars(start + first, s.length(), tail, 0);
+            }
+            tailCount += length;
+        }
+
+        @Override
+        public synchronized boolean isTruncated() {
+            return tailCount > tail.length;
+        }
+
+        @Override
+        public synchronized void writeOutputTo(Writer writer) throws IOException {
+            writer.append(head);
+            if (tailCount <= tail.length) {
+                writer.write(tail, 0, (int) tailCount);
+                return;
+            }
+
+            writer.write(LS + "[... " + (tailCount - tail.length) + " characters omitted ...]" + LS);
+            if (tail.length > 0) {
+                int position = (int) (tailCount % tail.length);
+                writer.write(tail, position, tail.length - position);
+                writer.write(tail, 0, position);
+            }
+        }
+    }
+
+    /**
+     * Keeps the output in memory up to a threshold, then in a temporary file.
+     */
+    private static final class Spilling extends CapturingStreamConsumer {
+
+        private final int thresholdChars;
+
+        private final StringBuilder buffer;
+
+        private File spillFile;
+
+        private Writer spillWriter;
+
+        private boolean closed;
+
+        Spilling(int thresholdChars) {
+            this.thresholdChars = thresholdChars;
+            this.buffer = new StringBuilder(Math.min(thresholdChars, 8192));
+        }
+
+        @Override
+        void capture(String s) throws IOException {
+            if (closed) {
+                return;
+            }
+            if (spillWriter == null && buffer.length() + s.length() <= thresholdChars) {
+                buffer.append(s);
+                return;
+            }
+            if (spillWriter == null) {
+                spillFile = Files.createTempFile("cli-output-", ".txt").toFile();
+                spillWriter = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8);
+                spillWriter.append(buffer);
+                buffer.setLength(0);
+                buffer.trimToSize();
+            }
+            spillWriter.write(s);
+        }
+
+        @Override
+        synchronized File getSpillFile() {
+            return spillFile;
+        }
+
+        @Override
+        public boolean isTruncated() {
+            return false;
+        }
+
+        @Override
+        public synchronized void writeOutputTo(Writer writer) throws IOException {
+            if (closed) {
+                throw new IOException("The captured output was released.");
+            }
+            if (spillWriter == null) {
+                writer.append(buffer);
+                return;
+            }
+
+            spillWriter.flush();
+            char[] chars = new char[8192];
+            try (Reader reader = Files.newBufferedReader(spillFile.toPath(), StandardCharsets.UTF_8)) {
+                for (int n = reader.read(chars); n >= 0; n = reader.read(chars)) {
+                    writer.write(chars, 0, n);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            buffer.setLength(0);
+            if (spillWriter != null) {
+                try {
+                    spillWriter.close();
+                } finally {
+                    Files.deleteIfExists(spillFile.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps no output.
+     */
+    private static final class Counting extends CapturingStreamConsumer {
+
+        @Override
+        void capture(String s) {}
+
+        @Override
+        public boolean isTruncated() {
+            return getCharCount() > 0;
+        }
+
+        @Override
+        public void writeOutputTo(Writer writer) {}
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * <p>
+ * Executes a batch of independent {@link Commandline}s with a bounded number of concurrently running processes.
+ * </p>
+ * <p>
+ * Each submitted command line is forked as soon as one of the <code>maxConcurrency</code> slots becomes free. The
+ * stream pumpers of all processes of the batch run on a single shared thread pool, so the threads are reused across
+ * processes instead of being created for every execution.
+ * </p>
+ * <pre>
+ * try (CommandLineBatch batch = new CommandLineBatch(4)) {
+ *     for (Commandline cl : commandLines) {
+ *         batch.submit(cl, systemOut, systemErr);
+ *     }
+ *     CommandLineBatch.Summary summary = batch.awaitAll();
+ * }
+ * </pre>
+ *
+ * @since 3.5.0
+ */
+public class CommandLineBatch implements AutoCloseable {
+
+    private final int maxConcurrency;
+
+    private final ExecutorService processExecutor;
+
+    private final ExecutorService pumpExecutor;
+
+    private final List<CompletableFuture<Result>> futures = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile int timeoutInSeconds;
+
+    private volatile Charset streamCharset;
+
+    private volatile CommandLineExecutionOptions executionOptions;
+
+    /**
+     * Create a new batch.
+     *
+     * @param maxConcurrency the maximum number of processes running at the same time, must be positive
+     */
+    public CommandLineBatch(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive, but was " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.processExecutor = Executors.newFixedThreadPool(maxConcurrency, new DaemonThreadFactory("process"));
+        // the pumpers block until EOF, so the pool must never queue them: at most two pumpers per running process
+        this.pumpExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("pump"));
+    }
+
+    /**
+     * @return the maximum number of processes running at the same time
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Sets the timeout applied to each process of the batch submitted afterwards.
+     *
+     * @param timeoutInSeconds positive integer to specify timeout, zero and negative integers for no timeout
+     */
+    public void setTimeoutInSeconds(int timeoutInSeconds) {
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
+    /**
+     * Sets the charset used to read the streams of the processes submitted afterwards.
+     *
+     * @param streamCharset charset to use for reading streams, <code>null</code> for the platform default
+     */
+    public void setStreamCharset(@Nullable Charset streamCharset) {
+        this.streamCharset = streamCharset;
+    }
+
+    /**
+     * Sets the options controlling the execution of the processes submitted afterwards.
+     *
+     * @param executionOptions the options, <code>null</code> for the defaults
+     */
+    public void setExecutionOptions(@Nullable CommandLineExecutionOptions executionOptions) {
+        this.executionOptions = executionOptions;
+    }
+
+    /**
+     * Schedules a command line for execution. The returned future completes normally once the process has finished,
+     * failures are reported through {@link Result#getExecutionException()}. It is cancelled instead if the batch is
+     * {@link #close() closed} before the command line has been executed.
+     *
+     * @param cl        the command line to execute
+     * @param systemOut a consumer that receives output, must be thread safe
+     * @param systemErr a consumer that receives system error stream output, must be thread safe
+     * @return the future result of the execution
+     * @throws java.util.concurrent.RejectedExecutionException if the batch has already been closed
+     */
+    public CompletableFuture<Result> submit(
+            @NonNull final Commandline cl, final StreamConsumer systemOut, final StreamConsumer systemErr) {
+        //noinspection ConstantConditions
+        if (cl == null) {
+            throw new IllegalArgumentException("cl cannot be null.");
+        }
+
+        final int timeout = timeoutInSeconds;
+        final Charset charset = streamCharset;
+        final CommandLineExecutionOptions options = executionOptions;
+
+        CompletableFuture<Result> future = CompletableFuture.supplyAsync(
+                () -> execute(cl, systemOut, systemErr, timeout, charset, options), processExecutor);
+        futures.add(future);
+        return future;
+    }
+
+    /**
+     * Waits until all command lines submitted so far have been executed.
+     *
+     * @return the results, in submission order
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @throws java.util.concurrent.CancellationException if the batch has been closed before all submitted command
+     *             lines have been executed
+     */
+    public Summary awaitAll() throws InterruptedException {
+        List<CompletableFuture<Result>> submitted;
+        synchronized (futures) {
+            submitted = new ArrayList<>(futures);
+        }
+
+        List<Result> results = new ArrayList<>(submitted.size());
+        for (CompletableFuture<Result> future : submitted) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                // execute() reports all failures through the result
+                throw new IllegalStateException("Unexpected failure of batch execution", e.getCause());
+            }
+        }
+        return new Summary(results);
+    }
+
+    /**
+     * Stops the batch: command lines that have not been started yet are cancelled, running processes are destroyed.
+     * The futures of all command lines not completed yet are cancelled, so a later {@link #awaitAll()} throws a
+     * {@link java.util.concurrent.CancellationException}. Call {@link #awaitAll()} first to let all submitted command
+     * lines complete.
+     */
+    @Override
+    public void close() {
+        processExecutor.shutdownNow();
+        synchronized (futures) {
+            for (CompletableFuture<Result> future : futures) {
+                future.cancel(false);
+            }
+        }
+        try {
+            processExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pumpExecutor.shutdown();
+        }
+    }
+
+    private Result execute(
+            Commandline cl,
+            StreamConsumer systemOut,
+            StreamConsumer systemErr,
+            int timeout,
+            @Nullable Charset charset,
+            @Nullable CommandLineExecutionOptions options) {
+        Result result = new Result(cl);
+        long start = System.nanoTime();
+        try {
+            CommandLineExecution execution = CommandLineUtils.executeCommandLineAsCallable(
+                    cl, null, systemOut, systemErr, timeout, null, charset, pumpExecutor, options);
+            result.executionResult = execution.execute();
+            result.exitCode = result.executionResult.getExitCode();
+        } catch (CommandLineException e) {
+            result.executionException = e;
+        } catch (RuntimeException e) {
+            result.executionException =
+                    new CommandLineException("Error while executing " + cl.getExecutable() + ".", e);
+        } finally {
+            result.durationNanos = System.nanoTime() - start;
+        }
+        return result;
+    }
+
+    /**
+     * The outcome of the execution of a single command line of the batch.
+     */
+    public static class Result {
+
+        private final Commandline commandline;
+
+        private int exitCode = Integer.MIN_VALUE;
+
+        private CommandLineException executionException;
+
+        private CommandLineResult executionResult;
+
+        private long durationNanos;
+
+        Result(Commandline commandline) {
+            this.commandline = commandline;
+        }
+
+        /**
+         * @return the executed command line
+         */
+        public Commandline getCommandline() {
+            return commandline;
+        }
+
+        /**
+         * Gets the exit code of the process. <strong>Note:</strong> This value is undefined if
+         * {@link #getExecutionException()} reports an exception.
+         *
+         * @return the exit code of the process
+         */
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * @return the exception that occurred while forking or running the process, <code>null</code> if none
+         */
+        public CommandLineException getExecutionException() {
+            return executionException;
+        }
+
+        /**
+         * @return the timing and stream statistics of the process, <code>null</code> if it did not complete
+         */
+        public CommandLineResult getExecutionResult() {
+            return executionResult;
+        }
+
+        /**
+         * @return the wall time from forking the process until its streams were fully consumed, in milliseconds
+         */
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        }
+
+        /**
+         * @return <code>true</code> if the process ran without exception and exited with <code>0</code>
+         */
+        public boolean isSuccessful() {
+            return executionException == null && exitCode == 0;
+        }
+    }
+
+    /**
+     * The aggregated outcome of a batch.
+     */
+    public static class Summary {
+
+        private final List<Result> results;
+
+        Summary(List<Result> results) {
+            this.results = Collections.unmodifiableList(results);
+        }
+
+        /**
+         * @return all results, in submission order
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the results which either failed with an exception or exited with a non-zero exit code
+         */
+        public List<Result> getFailures() {
+            List<Result> failures = new ArrayList<>();
+            for (Result result : results) {
+                if (!result.isSuccessful()) {
+                    failures.add(result);
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * @return <code>true</code> if all command lines completed successfully
+         */
+        public boolean isSuccessful() {
+            return getFailures().isEmpty();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private final String kind;
+
+        DaemonThreadFactory(String kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "CommandLineBatch-" + kind + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
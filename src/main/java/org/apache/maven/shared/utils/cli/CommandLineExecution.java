@@ -0,0 +1,448 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The wait for a forked process: feeds its input, pumps its output to the consumers and collects the
+ * {@link CommandLineResult}.
+ *
+ * @see CommandLineUtils#executeCommandLineAsCallable(Commandline, InputStream, StreamConsumer, StreamConsumer, int,
+ *      Runnable, Charset)
+ */
+class CommandLineExecution implements CommandLineCallable {
+
+    /**
+     * Interval in milliseconds in which the stream pumpers are checked for being stuck while waiting for EOF.
+     */
+    private static final long STUCK_STREAM_CHECK_INTERVAL_MS = 50;
+
+    /**
+     * How often EOF had to be forced by closing the process streams, over all executions.
+     */
+    private static final AtomicLong STREAM_EOF_FALLBACK_COUNT = new AtomicLong();
+
+    /**
+     * The CPU time of a process is only available while it is running, so it is sampled while waiting for the
+     * process, starting with this interval in milliseconds and doubling it up to {@link #MAX_CPU_SAMPLING_INTERVAL_MS}.
+     * The descendants of the process are sampled alongside if the process tree is tracked.
+     */
+    private static final long MIN_CPU_SAMPLING_INTERVAL_MS = 10;
+
+    private static final long MAX_CPU_SAMPLING_INTERVAL_MS = 1000;
+
+    private final Process p;
+
+    private final long startNanos;
+
+    private final Thread processHook;
+
+    private final InputStream systemIn;
+
+    private final StreamConsumer systemOut;
+
+    private final StreamConsumer systemErr;
+
+    private final int timeoutInSeconds;
+
+    private final Runnable runAfterProcessTermination;
+
+    private final Runnable cleanup;
+
+    private final Charset streamCharset;
+
+    private final Executor pumpExecutor;
+
+    private final CommandLineExecutionOptions options;
+
+    /**
+     * The <code>ProcessHandle</code>s of the descendants observed while the process was running.
+     */
+    private final Set<Object> descendants = new HashSet<>();
+
+    /**
+     * The CPU time in nanoseconds last sampled of the process and of its observed descendants, by
+     * <code>ProcessHandle</code>.
+     */
+    private final Map<Object, Long> cpuTimes = new HashMap<>();
+
+    /**
+     * @param p                the forked process
+     * @param startNanos       the {@link System#nanoTime()} before forking the process
+     * @param systemIn         the input to read from, must be thread safe
+     * @param systemOut        a consumer that receives output, must be thread safe
+     * @param systemErr        a consumer that receives system error stream output, must be thread safe
+     * @param timeoutInSeconds positive integer to specify timeout, zero and negative integers for no timeout
+     * @param runAfterProcessTermination optional callback to run after the process terminated or the the timeout was
+     * @param cleanup          optional callback releasing the resources of the process, run after the process
+     *                         terminated or, if the execution is never awaited, on JVM shutdown
+     * @param streamCharset    charset to use for reading streams
+     * @param pumpExecutor     executor running the stream pumpers, <code>null</code> to start a thread per pumper
+     * @param options          the execution options, <code>null</code> for the defaults
+     */
+    CommandLineExecution(
+            final Process p,
+            long startNanos,
+            @Nullable InputStream systemIn,
+            StreamConsumer systemOut,
+            StreamConsumer systemErr,
+            int timeoutInSeconds,
+            @Nullable Runnable runAfterProcessTermination,
+            @Nullable Runnable cleanup,
+            @Nullable Charset streamCharset,
+            @Nullable Executor pumpExecutor,
+            @Nullable CommandLineExecutionOptions options) {
+        this.p = p;
+        this.startNanos = startNanos;
+        this.systemIn = systemIn;
+        this.systemOut = systemOut;
+        this.systemErr = systemErr;
+        this.timeoutInSeconds = timeoutInSeconds;
+        this.runAfterProcessTermination = runAfterProcessTermination;
+        this.cleanup = cleanup;
+        this.streamCharset = streamCharset;
+        this.pumpExecutor = pumpExecutor;
+        this.options = options != null ? options : new CommandLineExecutionOptions();
+
+        this.processHook = new Thread() {
+
+            {
+                this.setName("CommandLineUtils process shutdown hook");
+                this.setContextClassLoader(null);
+            }
+
+            @Override
+            public void run() {
+                try {
+                    p.destroy();
+                } finally {
+                    if (cleanup != null) {
+                        cleanup.run();
+                    }
+                }
+            }
+        };
+
+        ShutdownHookUtils.addShutDownHook(processHook);
+    }
+
+    @Override
+    public Integer call() throws CommandLineException {
+        return execute().getExitCode();
+    }
+
+    /**
+     * Waits for the process to terminate and its streams to be consumed.
+     *
+     * @return the result of the execution
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     */
+    CommandLineResult execute() throws CommandLineException {
+        CommandLineResult result = new CommandLineResult();
+        StreamPollFeeder inputFeeder = null;
+        StreamPumper outputPumper = null;
+        StreamPumper errorPumper = null;
+        try {
+            if (systemIn != null) {
+                inputFeeder = new StreamPollFeeder(systemIn, p.getOutputStream());
+                inputFeeder.setName("StreamPollFeeder-systemIn");
+                inputFeeder.start();
+            }
+
+            outputPumper = new StreamPumper(p.getInputStream(), systemOut, streamCharset);
+            errorPumper = new StreamPumper(p.getErrorStream(), systemErr, streamCharset);
+            if (options.isStreamPolling()) {
+                StreamPoller.getInstance().register(p, pumpExecutor, outputPumper, errorPumper);
+            } else {
+                outputPumper.setName("StreamPumper-systemOut");
+                startStreamHandler(outputPumper);
+
+                errorPumper.setName("StreamPumper-systemErr");
+                startStreamHandler(errorPumper);
+            }
+
+            int returnValue = waitFor(result);
+            long exitNanos = System.nanoTime();
+
+            // After the process has terminated its output streams may, on some
+            // JVMs, fail to deliver EOF (JDK-4311711), or be held open by a
+            // left-over child, leaving the pumpers blocked in readLine()
+            // forever. Normally the pumpers drain the remaining buffered output
+            // and reach EOF on their own, so first wait for them until the grace
+            // period elapses or they are detected to be stuck; only then force
+            // EOF by closing the streams. The pumpers are disabled first so the
+            // IOException caused by our close is treated as EOF instead of being
+            // reported as a stream failure.
+            if (inputFeeder != null) {
+                inputFeeder.waitUntilDone();
+            }
+
+            if (!awaitStreamEof(outputPumper, errorPumper)) {
+                STREAM_EOF_FALLBACK_COUNT.incrementAndGet();
+                result.setStreamEofForced(true);
+
+                outputPumper.disable();
+                errorPumper.disable();
+
+                closeProcessStreams(p);
+
+                try {
+                    outputPumper.waitUntilDone();
+                } finally {
+                    errorPumper.waitUntilDone();
+                }
+            }
+
+            long endNanos = System.nanoTime();
+            result.setExitCode(returnValue);
+            result.setWallTimeNanos(endNanos - startNanos);
+            result.setEofGraceWaitNanos(endNanos - exitNanos);
+            result.setTimeToFirstOutputNanos(getTimeToFirstOutputNanos(outputPumper, errorPumper));
+            result.setStdout(outputPumper.getByteCount(), outputPumper.getLineCount());
+            result.setStderr(errorPumper.getByteCount(), errorPumper.getLineCount());
+
+            if (inputFeeder != null && inputFeeder.getException() != null) {
+                throw new CommandLineException("Failure processing stdin.", inputFeeder.getException());
+            }
+
+            if (outputPumper.getException() != null) {
+                throw new CommandLineException("Failure processing stdout.", outputPumper.getException());
+            }
+
+            if (errorPumper.getException() != null) {
+                throw new CommandLineException("Failure processing stderr.", errorPumper.getException());
+            }
+
+            return result;
+        } catch (CommandLineTimeOutException ex) {
+            throw terminate(ex);
+        } catch (InterruptedException ex) {
+            // terminate before restoring the interrupt flag, which would cut the grace period of the termination short
+            CommandLineTimeOutException timeout = terminate(
+                    new CommandLineTimeOutException("Error while executing external command, process killed.", ex));
+            Thread.currentThread().interrupt();
+            throw timeout;
+        } finally {
+            if (outputPumper != null) {
+                outputPumper.disable();
+            }
+            if (errorPumper != null) {
+                errorPumper.disable();
+            }
+
+            try {
+                if (runAfterProcessTermination != null) {
+                    runAfterProcessTermination.run();
+                }
+            } finally {
+                ShutdownHookUtils.removeShutdownHook(processHook);
+                processHook.run();
+            }
+        }
+    }
+
+    /**
+     * Waits for the process to terminate, sampling its CPU time and descendants meanwhile if enabled.
+     */
+    private int waitFor(CommandLineResult result) throws InterruptedException, CommandLineTimeOutException {
+        if (!ProcessHandles.isAvailable() || !(options.isCpuTimeSampling() || options.isProcessTreeAware())) {
+            if (timeoutInSeconds > 0 && !p.waitFor(timeoutInSeconds, TimeUnit.SECONDS)) {
+                throw timedOut();
+            }
+            return p.waitFor();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutInSeconds);
+        long interval = MIN_CPU_SAMPLING_INTERVAL_MS;
+        while (true) {
+            long wait = interval;
+            if (timeoutInSeconds > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw timedOut();
+                }
+                wait = Math.min(wait, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+            }
+
+            if (p.waitFor(wait, TimeUnit.MILLISECONDS)) {
+                return p.exitValue();
+            }
+
+            sampleProcessTree(result);
+            interval = Math.min(interval * 2, MAX_CPU_SAMPLING_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Records the running descendants if the process tree is tracked, and samples the CPU time of the process and of
+     * the descendants if enabled. The last sample of a descendant is kept once it exited.
+     */
+    private void sampleProcessTree(CommandLineResult result) {
+        boolean cpuTimeSampling = options.isCpuTimeSampling();
+        if (cpuTimeSampling) {
+            sampleCpuTime(ProcessHandles.toHandle(p));
+        }
+        if (options.isProcessTreeAware()) {
+            for (Object descendant : ProcessHandles.getDescendants(p)) {
+                descendants.add(descendant);
+                if (cpuTimeSampling) {
+                    sampleCpuTime(descendant);
+                }
+            }
+        }
+
+        if (!cpuTimes.isEmpty()) {
+            long total = 0;
+            for (long cpuTimeNanos : cpuTimes.values()) {
+                total += cpuTimeNanos;
+            }
+            result.setCpuTimeNanos(total);
+        }
+    }
+
+    private void sampleCpuTime(Object handle) {
+        long cpuTimeNanos = handle != null ? ProcessHandles.getTotalCpuNanos(handle) : -1;
+        if (cpuTimeNanos >= 0) {
+            cpuTimes.put(handle, cpuTimeNanos);
+        }
+    }
+
+    /**
+     * Waits for the pumpers to reach EOF after the process exited.
+     *
+     * @return <code>true</code> if both pumpers are done, <code>false</code> if the grace period elapsed or the
+     *         pumpers are stuck
+     */
+    private boolean awaitStreamEof(StreamPumper outputPumper, StreamPumper errorPumper) throws InterruptedException {
+        long gracePeriod = options.getStreamEofGracePeriodMillis();
+        boolean detectStuck = options.isProcessTreeAware() && ProcessHandles.isAvailable();
+        if (!detectStuck) {
+            return outputPumper.waitUntilDone(gracePeriod) && errorPumper.waitUntilDone(gracePeriod);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gracePeriod);
+        long lastByteCount = -1;
+        while (true) {
+            long wait = STUCK_STREAM_CHECK_INTERVAL_MS;
+            if (gracePeriod > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait = Math.min(wait, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+            }
+
+            if (outputPumper.waitUntilDone(wait) && errorPumper.waitUntilDone(wait)) {
+                return true;
+            }
+
+            long byteCount = outputPumper.getByteCount() + errorPumper.getByteCount();
+            if (byteCount == lastByteCount
+                    && isBlockedReading(outputPumper)
+                    && isBlockedReading(errorPumper)
+                    && !hasLiveDescendants()) {
+                return false;
+            }
+            lastByteCount = byteCount;
+        }
+    }
+
+    private static boolean isBlockedReading(StreamPumper pumper) {
+        return pumper.isDone() || pumper.isReading();
+    }
+
+    private boolean hasLiveDescendants() {
+        for (Object descendant : descendants) {
+            if (ProcessHandles.isAlive(descendant)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return how often EOF had to be forced by closing the process streams, over all executions
+     */
+    static long getStreamEofFallbackCount() {
+        return STREAM_EOF_FALLBACK_COUNT.get();
+    }
+
+    /**
+     * Terminates the process according to the termination policy, reporting the terminated processes on the exception.
+     */
+    private CommandLineTimeOutException terminate(CommandLineTimeOutException ex) {
+        if (p.isAlive()) {
+            ex.setTerminatedProcesses(options.getTerminationPolicy().terminate(p, descendants));
+        }
+        return ex;
+    }
+
+    private CommandLineTimeOutException timedOut() {
+        return new CommandLineTimeOutException(String.format("Process timed out after %d seconds.", timeoutInSeconds));
+    }
+
+    private long getTimeToFirstOutputNanos(StreamPumper outputPumper, StreamPumper errorPumper) {
+        long first = 0;
+        for (StreamPumper pumper : new StreamPumper[] {outputPumper, errorPumper}) {
+            long firstByteNanos = pumper.getFirstByteNanos();
+            if (firstByteNanos != 0 && (first == 0 || firstByteNanos - first < 0)) {
+                first = firstByteNanos;
+            }
+        }
+        return first == 0 ? -1 : first - startNanos;
+    }
+
+    private void startStreamHandler(Thread handler) {
+        if (pumpExecutor == null) {
+            handler.start();
+        } else {
+            pumpExecutor.execute(handler);
+        }
+    }
+
+    private static void closeProcessStreams(Process p) {
+        try {
+            p.getOutputStream().close();
+        } catch (IOException e) {
+            // ignore
+        }
+        try {
+            p.getInputStream().close();
+        } catch (IOException e) {
+            // ignore
+        }
+        try {
+            p.getErrorStream().close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.util.Objects;
+
+/**
+ * Fine-tunes how {@link CommandLineUtils} waits for a forked process and its output.
+ *
+ * @since 3.5.0
+ */
+public class CommandLineExecutionOptions {
+
+    /**
+     * The default grace period in milliseconds to wait for the output streams to reach EOF after the process exited.
+     */
+    public static final long DEFAULT_STREAM_EOF_GRACE_PERIOD_MS = 5000;
+
+    private long streamEofGracePeriodMillis = DEFAULT_STREAM_EOF_GRACE_PERIOD_MS;
+
+    private boolean processTreeAware;
+
+    private boolean cpuTimeSampling;
+
+    private boolean streamPolling;
+
+    private ProcessTerminationPolicy terminationPolicy = new ProcessTerminationPolicy();
+
+    /**
+     * @return the grace period in milliseconds to wait for the output streams to reach EOF after the process exited
+     * @see #setStreamEofGracePeriodMillis(long)
+     */
+    public long getStreamEofGracePeriodMillis() {
+        return streamEofGracePeriodMillis;
+    }
+
+    /**
+     * <p>
+     * Sets the grace period to wait for the output streams to reach EOF on their own after the process exited. On some
+     * JVMs the streams of a terminated process fail to deliver EOF (see
+     * <a href="https://bugs.java.com/bugdatabase/view_bug.do?bug_id=4311711">JDK-4311711</a>); the same happens when
+     * a process leaves behind a child still holding its output pipes. Once the grace period elapsed, EOF is forced by
+     * closing the process streams, and the stream readers are waited for: depending on the platform, a read blocked
+     * on a pipe held open by a child only returns once the child closed it.
+     * </p>
+     *
+     * @param streamEofGracePeriodMillis the grace period in milliseconds, zero or negative to wait indefinitely
+     */
+    public void setStreamEofGracePeriodMillis(long streamEofGracePeriodMillis) {
+        this.streamEofGracePeriodMillis = streamEofGracePeriodMillis;
+    }
+
+    /**
+     * @return <code>true</code> if stuck output streams are detected through the process tree
+     * @see #setProcessTreeAware(boolean)
+     */
+    public boolean isProcessTreeAware() {
+        return processTreeAware;
+    }
+
+    /**
+     * <p>
+     * Enables the detection of stuck output streams, disabled by default. While the process runs, its descendants are
+     * tracked; once it exited and none of them is alive anymore, nobody can write to the output streams. A stream
+     * reader which is then blocked without making progress is stuck, and EOF is forced right away instead of waiting
+     * for the whole grace period, see {@link #setStreamEofGracePeriodMillis(long)}.
+     * </p>
+     * <p>
+     * Requires Java 9 or later, on Java 8 only the grace period applies. Output written by a descendant which was never
+     * observed while the process was running, e.g. a short-lived one forked in the background right before exiting,
+     * may be lost. Tracking the descendants lists the processes of the system periodically while the process runs.
+     * </p>
+     *
+     * @param processTreeAware <code>true</code> to detect stuck streams, <code>false</code> to always wait for the
+     *            grace period
+     */
+    public void setProcessTreeAware(boolean processTreeAware) {
+        this.processTreeAware = processTreeAware;
+    }
+
+    /**
+     * @return <code>true</code> if the CPU time of the process is sampled
+     * @see #setCpuTimeSampling(boolean)
+     */
+    public boolean isCpuTimeSampling() {
+        return cpuTimeSampling;
+    }
+
+    /**
+     * Samples the CPU time of the process while it runs, disabled by default, see
+     * {@link CommandLineResult#getCpuTimeMillis()}. The process is then polled instead of waited for, at intervals
+     * growing up to one second. Requires Java 9 or later.
+     *
+     * @param cpuTimeSampling <code>true</code> to sample the CPU time of the process
+     */
+    public void setCpuTimeSampling(boolean cpuTimeSampling) {
+        this.cpuTimeSampling = cpuTimeSampling;
+    }
+
+    /**
+     * @return <code>true</code> if the output streams are pumped by shared poller threads
+     * @see #setStreamPolling(boolean)
+     */
+    public boolean isStreamPolling() {
+        return streamPolling;
+    }
+
+    /**
+     * <p>
+     * Pumps the output streams from a few threads shared by all the executions, instead of two threads per execution,
+     * disabled by default. Meant for running many processes concurrently, where the pumping threads would otherwise
+     * dominate the thread count and context switches.
+     * </p>
+     * <p>
+     * The consumers receive the same lines, and failures are reported the same way. As the JDK cannot wait for the
+     * readiness of process pipes, the streams are polled: output may be delivered up to about 10 milliseconds later,
+     * and a process writing a lot to a consumer slower than the process competes with the other processes for the
+     * poller thread. Once the process exited, the remaining output is drained by a short-lived thread, or by the pump
+     * executor of a {@link CommandLineBatch}.
+     * </p>
+     *
+     * @param streamPolling <code>true</code> to poll the streams from shared threads, <code>false</code> to use
+     *            dedicated threads
+     */
+    public void setStreamPolling(boolean streamPolling) {
+        this.streamPolling = streamPolling;
+    }
+
+    /**
+     * @return how a process which timed out is terminated
+     * @see #setTerminationPolicy(ProcessTerminationPolicy)
+     */
+    public ProcessTerminationPolicy getTerminationPolicy() {
+        return terminationPolicy;
+    }
+
+    /**
+     * Sets how a process which timed out, or whose execution was interrupted, is terminated. By default only the
+     * forked process is asked to terminate, without waiting for it or killing it.
+     *
+     * @param terminationPolicy the termination policy, not <code>null</code>
+     */
+    public void setTerminationPolicy(ProcessTerminationPolicy terminationPolicy) {
+        this.terminationPolicy = Objects.requireNonNull(terminationPolicy, "terminationPolicy");
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes the outcome of a process executed by {@link CommandLineUtils}: the exit code together with timing and
+ * stream statistics useful to find out where the time of an execution went.
+ *
+ * @see CommandLineUtils#executeCommandLineForResult(Commandline, java.io.InputStream, StreamConsumer, StreamConsumer,
+ *      int)
+ * @since 3.5.0
+ */
+public class CommandLineResult {
+
+    private int exitCode = Integer.MIN_VALUE;
+
+    private long wallTimeNanos;
+
+    private long timeToFirstOutputNanos = -1;
+
+    private long eofGraceWaitNanos;
+
+    private long cpuTimeNanos = -1;
+
+    private long stdoutBytes;
+
+    private long stdoutLines;
+
+    private long stderrBytes;
+
+    private long stderrLines;
+
+    private boolean streamEofForced;
+
+    /**
+     * @return the exit code of the process, see {@link Process#exitValue()}
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return the time from forking the process until its output was completely consumed, in milliseconds
+     */
+    public long getWallTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(wallTimeNanos);
+    }
+
+    /**
+     * @return the time from forking the process until the first byte arrived on stdout or stderr, in milliseconds, or
+     *         <code>-1</code> if the process did not output anything
+     */
+    public long getTimeToFirstOutputMillis() {
+        return timeToFirstOutputNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(timeToFirstOutputNanos);
+    }
+
+    /**
+     * @return the time spent after the process exited waiting for its output streams to reach EOF, in milliseconds
+     */
+    public long getEofGraceWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(eofGraceWaitNanos);
+    }
+
+    /**
+     * <p>
+     * Gets the CPU time consumed by the process, if
+     * {@link CommandLineExecutionOptions#setCpuTimeSampling(boolean) enabled}. The value is sampled while the process
+     * is running, as it is no
+     * longer available once the process terminated, at intervals growing up to one second: it is a lower bound of the
+     * total CPU time, which misses what was consumed since the last sample.
+     * </p>
+     * <p>
+     * Unless {@link CommandLineExecutionOptions#setProcessTreeAware(boolean) the process tree is tracked}, only the
+     * forked process itself is accounted for: when the command is run through a shell, which is the default, that is
+     * the CPU time of the shell rather than of the command, so the value is only meaningful for
+     * {@link Commandline#setDirectExecution(boolean) direct execution}. With the process tree tracked, the CPU time
+     * of the descendants observed is added. Only available on Java 9 and later, and on platforms reporting the CPU
+     * time of processes.
+     * </p>
+     *
+     * @return the CPU time in milliseconds, or <code>-1</code> if not available
+     */
+    public long getCpuTimeMillis() {
+        return cpuTimeNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(cpuTimeNanos);
+    }
+
+    /**
+     * @return the number of bytes read from stdout of the process
+     */
+    public long getStdoutBytes() {
+        return stdoutBytes;
+    }
+
+    /**
+     * @return the number of lines read from stdout of the process
+     */
+    public long getStdoutLines() {
+        return stdoutLines;
+    }
+
+    /**
+     * @return the number of bytes read from stderr of the process
+     */
+    public long getStderrBytes() {
+        return stderrBytes;
+    }
+
+    /**
+     * @return the number of lines read from stderr of the process
+     */
+    public long getStderrLines() {
+        return stderrLines;
+    }
+
+    /**
+     * @return <code>true</code> if the output streams did not reach EOF on their own after the process exited and
+     *         had to be closed
+     * @see CommandLineExecutionOptions#setStreamEofGracePeriodMillis(long)
+     */
+    public boolean isStreamEofForced() {
+        return streamEofForced;
+    }
+
+    void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    void setWallTimeNanos(long wallTimeNanos) {
+        this.wallTimeNanos = wallTimeNanos;
+    }
+
+    void setTimeToFirstOutputNanos(long timeToFirstOutputNanos) {
+        this.timeToFirstOutputNanos = timeToFirstOutputNanos;
+    }
+
+    void setEofGraceWaitNanos(long eofGraceWaitNanos) {
+        this.eofGraceWaitNanos = eofGraceWaitNanos;
+    }
+
+    void setCpuTimeNanos(long cpuTimeNanos) {
+        this.cpuTimeNanos = cpuTimeNanos;
+    }
+
+    void setStdout(long bytes, long lines) {
+        this.stdoutBytes = bytes;
+        this.stdoutLines = lines;
+    }
+
+    void setStderr(long bytes, long lines) {
+        this.stderrBytes = bytes;
+        this.stderrLines = lines;
+    }
+
+    void setStreamEofForced(boolean streamEofForced) {
+        this.streamEofForced = streamEofForced;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "CommandLineResult{exitCode=" + exitCode + ", wallTime=" + getWallTimeMillis() + "ms, firstOutput="
+                + getTimeToFirstOutputMillis() + "ms, eofGraceWait=" + getEofGraceWaitMillis() + "ms, cpuTime="
+                + getCpuTimeMillis() + "ms, stdout=" + stdoutBytes + "b/" + stdoutLines + "l, stderr=" + stderrBytes
+                + "b/" + stderrLines + "l, streamEofForced=" + streamEofForced + "}";
+    }
+}
@@ -18,6 +18,11 @@
  */
 package org.apache.maven.shared.utils.cli;
 
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.shared.utils.cli.ProcessTerminationPolicy.TerminatedProcess;
+
 /**
  * Report a timeout for executing process.
  *
@@ -27,6 +32,8 @@ public class CommandLineTimeOutException extends CommandLineException {
 
     private static final long serialVersionUID = 7322428741683224481L;
 
+    private List<TerminatedProcess> terminatedProcesses = Collections.emptyList();
+
     /**
      * @param message the message of the exception
      * @param cause the cause of the exception
@@ -41,4 +48,17 @@ public class CommandLineTimeOutException extends CommandLineException {
     public CommandLineTimeOutException(String message) {
         super(message);
     }
+
+    /**
+     * @return the processes terminated because of the timeout, the forked process first, empty if not known
+     * @see CommandLineExecutionOptions#setTerminationPolicy(ProcessTerminationPolicy)
+     * @since 3.5.0
+     */
+    public List<TerminatedProcess> getTerminatedProcesses() {
+        return terminatedProcesses;
+    }
+
+    void setTerminatedProcesses(List<TerminatedProcess> terminatedProcesses) {
+        this.terminatedProcesses = Collections.unmodifiableList(terminatedProcesses);
+    }
 }
@@ -18,16 +18,21 @@
  */
 package org.apache.maven.shared.utils.cli;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
-import java.util.StringTokenizer;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
 
 import org.apache.maven.shared.utils.Os;
 import org.apache.maven.shared.utils.StringUtils;
@@ -40,14 +45,8 @@ import org.jspecify.annotations.Nullable;
 public abstract class CommandLineUtils {
 
     /**
-     * Grace period in milliseconds to wait for the stream pumpers to drain the remaining process output and reach EOF
-     * on their own after the process has exited, before forcing EOF by closing the process streams. See
-     * <a href="https://bugs.java.com/bugdatabase/view_bug.do?bug_id=4311711">JDK-4311711</a>.
-     */
-    private static final long STREAM_EOF_GRACE_PERIOD_MS = 5000;
-
-    /**
-     * A {@code StreamConsumer} providing consumed lines as a {@code String}.
+     * A {@code StreamConsumer} providing consumed lines as a {@code String}. The whole output is kept in memory, see
+     * {@link CapturingStreamConsumer} to bound the memory used.
      *
      * @see #getOutput()
      */
@@ -181,6 +180,92 @@ public abstract class CommandLineUtils {
         return future.call();
     }
 
+    /**
+     * Executes a command line and reports the outcome together with timing and stream statistics.
+     *
+     * @param cl               the command line to execute
+     * @param systemIn         the input to read from, must be thread safe
+     * @param systemOut        a consumer that receives output, must be thread safe
+     * @param systemErr        a consumer that receives system error stream output, must be thread safe
+     * @param timeoutInSeconds positive integer to specify timeout, zero and negative integers for no timeout
+     * @return the result of the execution
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static CommandLineResult executeCommandLineForResult(
+            @NonNull Commandline cl,
+            @Nullable InputStream systemIn,
+            StreamConsumer systemOut,
+            StreamConsumer systemErr,
+            int timeoutInSeconds)
+            throws CommandLineException {
+        return executeCommandLineForResult(cl, systemIn, systemOut, systemErr, timeoutInSeconds, null);
+    }
+
+    /**
+     * Executes a command line and reports the outcome together with timing and stream statistics.
+     *
+     * @param cl               the command line to execute
+     * @param systemIn         the input to read from, must be thread safe
+     * @param systemOut        a consumer that receives output, must be thread safe
+     * @param systemErr        a consumer that receives system error stream output, must be thread safe
+     * @param timeoutInSeconds positive integer to specify timeout, zero and negative integers for no timeout
+     * @param streamCharset    charset to use for reading streams
+     * @return the result of the execution
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static CommandLineResult executeCommandLineForResult(
+            @NonNull Commandline cl,
+            @Nullable InputStream systemIn,
+            StreamConsumer systemOut,
+            StreamConsumer systemErr,
+            int timeoutInSeconds,
+            @Nullable Charset streamCharset)
+            throws CommandLineException {
+        return executeCommandLineForResult(cl, systemIn, systemOut, systemErr, timeoutInSeconds, streamCharset, null);
+    }
+
+    /**
+     * Executes a command line and reports the outcome together with timing and stream statistics.
+     *
+     * @param cl               the command line to execute
+     * @param systemIn         the input to read from, must be thread safe
+     * @param systemOut        a consumer that receives output, must be thread safe
+     * @param systemErr        a consumer that receives system error stream output, must be thread safe
+     * @param timeoutInSeconds positive integer to specify timeout, zero and negative integers for no timeout
+     * @param streamCharset    charset to use for reading streams
+     * @param options          the options controlling the execution, <code>null</code> for the defaults
+     * @return the result of the execution
+     * @throws CommandLineException or CommandLineTimeOutException if time out occurs
+     * @since 3.5.0
+     */
+    public static CommandLineResult executeCommandLineForResult(
+            @NonNull Commandline cl,
+            @Nullable InputStream systemIn,
+            StreamConsumer systemOut,
+            StreamConsumer systemErr,
+            int timeoutInSeconds,
+            @Nullable Charset streamCharset,
+            @Nullable CommandLineExecutionOptions options)
+            throws CommandLineException {
+        return executeCommandLineAsCallable(
+                        cl, systemIn, systemOut, systemErr, timeoutInSeconds, null, streamCharset, null, options)
+                .execute();
+    }
+
+    /**
+     * Gets how often the output streams of a process did not reach EOF on their own after it exited, so that EOF had
+     * to be forced by closing them, over all executions of this JVM.
+     *
+     * @return the number of executions whose output streams had to be closed
+     * @see CommandLineExecutionOptions#setStreamEofGracePeriodMillis(long)
+     * @since 3.5.0
+     */
+    public static long getStreamEofFallbackCount() {
+        return CommandLineExecution.getStreamEofFallbackCount();
+    }
+
     /**
      * Immediately forks a process, returns a callable that will block until process is complete.
      *
@@ -231,141 +316,164 @@ public abstract class CommandLineUtils {
             @Nullable final Runnable runAfterProcessTermination,
             @Nullable final Charset streamCharset)
             throws CommandLineException {
+        return executeCommandLineAsCallable(
+                cl,
+                systemIn,
+                systemOut,
+                systemErr,
+                timeoutInSeconds,
+                runAfterProcessTermination,
+                streamCharset,
+                null,
+                null);
+    }
+
+    /**
+     * Immediately forks a process, returns a callable that will block until process is complete. The stream pumpers
+     * are run on the given executor instead of dedicated threads, so that callers running many processes can share
+     * the pumping threads among them.
+     *
+     * @param cl               the command line to execute
+     * @param systemIn         the input to read from, must be thread safe
+     * @param systemOut        a consumer that receives output, must be thread safe
+     * @param systemErr        a consumer that receives system error stream output, must be thread safe
+     * @param timeoutInSeconds positive integer to specify timeout, zero and negative integers for no timeout
+     * @param runAfterProcessTermination optional callback to run after the process terminated or the the timeout was
+     * @param streamCharset    charset to use for reading streams
+     * @param pumpExecutor     executor running the stream pumpers, <code>null</code> to start a thread per pumper;
+     *                         must not queue tasks, i.e. it must provide a thread for each pumper until it completes
+     * @param options          the options controlling the execution, <code>null</code> for the defaults
+     * @return a CommandLineCallable that provides the process return value
+     * @throws CommandLineException if the process could not be forked
+     */
+    static CommandLineExecution executeCommandLineAsCallable(
+            @NonNull final Commandline cl,
+            @Nullable final InputStream systemIn,
+            final StreamConsumer systemOut,
+            final StreamConsumer systemErr,
+            final int timeoutInSeconds,
+            @Nullable final Runnable runAfterProcessTermination,
+            @Nullable final Charset streamCharset,
+            @Nullable final Executor pumpExecutor,
+            @Nullable final CommandLineExecutionOptions options)
+            throws CommandLineException {
         //noinspection ConstantConditions
         if (cl == null) {
             throw new IllegalArgumentException("cl cannot be null.");
         }
 
-        final Process p = cl.execute();
-
-        final Thread processHook = new Thread() {
-
-            {
-                this.setName("CommandLineUtils process shutdown hook");
-                this.setContextClassLoader(null);
-            }
-
-            @Override
-            public void run() {
-                p.destroy();
+        String[] arguments = cl.getArguments();
+        final File argumentFile;
+        if (cl.getArgumentFileThreshold() > 0 && cl.getCommandlineLength() > cl.getArgumentFileThreshold()) {
+            // options for the launcher of the JDK tools are not supported in argument files
+            List<String> commandLineArguments = new ArrayList<>();
+            List<String> fileArguments = new ArrayList<>(arguments.length);
+            for (String argument : arguments) {
+                if (argument.startsWith("-J")) {
+                    commandLineArguments.add(argument);
+                } else {
+                    fileArguments.add(argument);
+                }
             }
-        };
-
-        ShutdownHookUtils.addShutDownHook(processHook);
-
-        return new CommandLineCallable() {
-
-            @Override
-            public Integer call() throws CommandLineException {
-                StreamPollFeeder inputFeeder = null;
-                StreamPumper outputPumper = null;
-                StreamPumper errorPumper = null;
-                try {
-                    if (systemIn != null) {
-                        inputFeeder = new StreamPollFeeder(systemIn, p.getOutputStream());
-                        inputFeeder.setName("StreamPollFeeder-systemIn");
-                        inputFeeder.start();
-                    }
-
-                    outputPumper = new StreamPumper(p.getInputStream(), systemOut);
-                    outputPumper.setName("StreamPumper-systemOut");
-                    outputPumper.start();
-
-                    errorPumper = new StreamPumper(p.getErrorStream(), systemErr);
-                    errorPumper.setName("StreamPumper-systemErr");
-                    errorPumper.start();
-
-                    if (timeoutInSeconds > 0 && !p.waitFor(timeoutInSeconds, TimeUnit.SECONDS)) {
-                        throw new CommandLineTimeOutException(
-                                String.format("Process timed out after %d seconds.", timeoutInSeconds));
-                    }
-
-                    int returnValue = p.waitFor();
-
-                    // After the process has terminated its output streams may, on some
-                    // JVMs, fail to deliver EOF (JDK-4311711), leaving the pumpers
-                    // blocked in readLine() forever. Normally the pumpers drain the
-                    // remaining buffered output and reach EOF on their own, so first
-                    // wait for them with a grace period; only if they are still stuck
-                    // force EOF by closing the streams. The pumpers are disabled first
-                    // so the IOException caused by our close is treated as EOF instead
-                    // of being reported as a stream failure.
-                    try {
-                        if (inputFeeder != null) {
-                            inputFeeder.waitUntilDone();
-                        }
-
-                        if (!outputPumper.waitUntilDone(STREAM_EOF_GRACE_PERIOD_MS)
-                                || !errorPumper.waitUntilDone(STREAM_EOF_GRACE_PERIOD_MS)) {
-                            outputPumper.disable();
-                            errorPumper.disable();
-
-                            closeProcessStreams(p);
-
-                            outputPumper.waitUntilDone();
-                            errorPumper.waitUntilDone();
-                        }
-                    } finally {
-                        try {
-                            outputPumper.waitUntilDone();
-                        } finally {
-                            errorPumper.waitUntilDone();
-                        }
-                    }
-
-                    if (inputFeeder != null && inputFeeder.getException() != null) {
-                        throw new CommandLineException("Failure processing stdin.", inputFeeder.getException());
-                    }
+            argumentFile = createArgumentFile(fileArguments.toArray(new String[0]));
+            commandLineArguments.add("@" + argumentFile.getAbsolutePath());
+            arguments = commandLineArguments.toArray(new String[0]);
+        } else {
+            argumentFile = null;
+        }
 
-                    if (outputPumper.getException() != null) {
-                        throw new CommandLineException("Failure processing stdout.", outputPumper.getException());
-                    }
+        long startNanos = System.nanoTime();
+        Process p;
+        try {
+            p = cl.execute(arguments);
+        } catch (CommandLineException e) {
+            deleteArgumentFile(argumentFile);
+            throw e;
+        }
 
-                    if (errorPumper.getException() != null) {
-                        throw new CommandLineException("Failure processing stderr.", errorPumper.getException());
-                    }
+        try {
+            return new CommandLineExecution(
+                    p,
+                    startNanos,
+                    systemIn,
+                    systemOut,
+                    systemErr,
+                    timeoutInSeconds,
+                    runAfterProcessTermination,
+                    argumentFile != null ? () -> deleteArgumentFile(argumentFile) : null,
+                    streamCharset,
+                    pumpExecutor,
+                    options);
+        } catch (RuntimeException | Error e) {
+            p.destroy();
+            deleteArgumentFile(argumentFile);
+            throw e;
+        }
+    }
 
-                    return returnValue;
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                    throw new CommandLineTimeOutException(
-                            "Error while executing external command, process killed.", ex);
-                } finally {
-                    if (outputPumper != null) {
-                        outputPumper.disable();
-                    }
-                    if (errorPumper != null) {
-                        errorPumper.disable();
-                    }
+    /**
+     * Writes the arguments into a temporary argument file in the format of the JDK tools.
+     *
+     * @param arguments the arguments
+     * @return the argument file
+     * @throws CommandLineException if the file could not be written
+     */
+    static File createArgumentFile(String[] arguments) throws CommandLineException {
+        int length = 0;
+        for (String argument : arguments) {
+            length += argument.length() + 3;
+        }
 
-                    try {
-                        if (runAfterProcessTermination != null) {
-                            runAfterProcessTermination.run();
-                        }
-                    } finally {
-                        ShutdownHookUtils.removeShutdownHook(processHook);
-                        processHook.run();
-                    }
+        StringBuilder content = new StringBuilder(length + (length >> 4));
+        for (String argument : arguments) {
+            content.append('"');
+            for (int i = 0; i < argument.length(); i++) {
+                char c = argument.charAt(i);
+                switch (c) {
+                    case '\\':
+                    case '"':
+                        content.append('\\').append(c);
+                        break;
+                    case '\n':
+                        content.append("\\n");
+                        break;
+                    case '\r':
+                        content.append("\\r");
+                        break;
+                    case '\t':
+                        content.append("\\t");
+                        break;
+                    default:
+                        content.append(c);
+                        break;
                 }
             }
-        };
-    }
-
-    private static void closeProcessStreams(Process p) {
-        try {
-            p.getOutputStream().close();
-        } catch (IOException e) {
-            // ignore
+            content.append('"').append('\n');
         }
+
+        Path file = null;
         try {
-            p.getInputStream().close();
+            // created readable by the owner only, the arguments may contain secrets
+            file = Files.createTempFile("cli-", ".args");
+            try (Writer writer = Files.newBufferedWriter(file, Charset.defaultCharset())) {
+                writer.append(content);
+            }
+            return file.toFile();
         } catch (IOException e) {
-            // ignore
+            if (file != null) {
+                deleteArgumentFile(file.toFile());
+            }
+            throw new CommandLineException("Error while writing argument file.", e);
         }
-        try {
-            p.getErrorStream().close();
-        } catch (IOException e) {
-            // ignore
+    }
+
+    private static void deleteArgumentFile(@Nullable File argumentFile) {
+        if (argumentFile != null && !argumentFile.delete()) {
+            try {
+                argumentFile.deleteOnExit();
+            } catch (IllegalStateException e) {
+                // the JVM is already shutting down
+            }
         }
     }
 
@@ -397,6 +505,51 @@ public abstract class CommandLineUtils {
         return ensureCaseSensitivity(envs, caseSensitive);
     }
 
+    /**
+     * Returns an immutable snapshot of the shell environment variables of this process, normalized as by
+     * {@link #getSystemEnvVars()}. The environment of a running JVM cannot change, so the snapshot is computed once
+     * on first use and shared by all command lines.
+     *
+     * @return the environment variables, never <code>null</code>
+     */
+    static Map<String, String> getSystemEnvironment() {
+        return SystemEnvironment.VARIABLES;
+    }
+
+    /**
+     * @return the snapshot of {@link #getSystemEnvironment()} as <code>name=value</code> entries, must not be modified
+     */
+    static String[] getSystemEnvironmentEntries() {
+        return SystemEnvironment.ENTRIES;
+    }
+
+    /**
+     * Lazy holder for the system environment snapshot.
+     */
+    private static final class SystemEnvironment {
+
+        private static final Map<String, String> VARIABLES;
+
+        private static final String[] ENTRIES;
+
+        static {
+            Map<String, String> variables = new LinkedHashMap<>();
+            Properties properties = getSystemEnvVars();
+            for (String name : properties.stringPropertyNames()) {
+                variables.put(name, properties.getProperty(name));
+            }
+
+            String[] entries = new String[variables.size()];
+            int i = 0;
+            for (Map.Entry<String, String> entry : variables.entrySet()) {
+                entries[i++] = entry.getKey() + "=" + entry.getValue();
+            }
+
+            VARIABLES = Collections.unmodifiableMap(variables);
+            ENTRIES = entries;
+        }
+    }
+
     /**
      * @param toProcess the command line to translate
      * @return the array of translated parts
@@ -407,70 +560,69 @@ public abstract class CommandLineUtils {
             return new String[0];
         }
 
-        // parse with a simple finite state machine
+        // parse with a simple finite state machine, scanning the characters directly: quotes, spaces and
+        // backslashes are handled one at a time, runs of any other characters are copied in bulk
 
         final int normal = 0;
         final int inQuote = 1;
         final int inDoubleQuote = 2;
         boolean inEscape = false;
         int state = normal;
-        final StringTokenizer tok = new StringTokenizer(toProcess, "\"' \\", true);
         List<String> tokens = new ArrayList<>();
         StringBuilder current = new StringBuilder();
 
-        while (tok.hasMoreTokens()) {
-            String nextTok = tok.nextToken();
-            switch (state) {
-                case inQuote:
-                    if ("'".equals(nextTok)) {
+        final int length = toProcess.length();
+        int i = 0;
+        while (i < length) {
+            char c = toProcess.charAt(i);
+            switch (c) {
+                case '\'':
+                case '"':
+                    if (state == normal) {
                         if (inEscape) {
-                            current.append(nextTok);
                             inEscape = false;
+                            current.append(c);
                         } else {
-                            state = normal;
+                            state = c == '\'' ? inQuote : inDoubleQuote;
                         }
-                    } else {
-                        current.append(nextTok);
-                        inEscape = "\\".equals(nextTok);
-                    }
-                    break;
-                case inDoubleQuote:
-                    if ("\"".equals(nextTok)) {
+                    } else if (c == (state == inQuote ? '\'' : '"')) {
                         if (inEscape) {
-                            current.append(nextTok);
+                            current.append(c);
                             inEscape = false;
                         } else {
                             state = normal;
                         }
                     } else {
-                        current.append(nextTok);
-                        inEscape = "\\".equals(nextTok);
+                        current.append(c);
+                        inEscape = false;
                     }
+                    i++;
                     break;
-                default:
-                    if ("'".equals(nextTok)) {
-                        if (inEscape) {
-                            inEscape = false;
-                            current.append(nextTok);
-                        } else {
-                            state = inQuote;
-                        }
-                    } else if ("\"".equals(nextTok)) {
-                        if (inEscape) {
-                            inEscape = false;
-                            current.append(nextTok);
-                        } else {
-                            state = inDoubleQuote;
-                        }
-                    } else if (" ".equals(nextTok)) {
+                case ' ':
+                    if (state == normal) {
                         if (current.length() != 0) {
                             tokens.add(current.toString());
                             current.setLength(0);
                         }
                     } else {
-                        current.append(nextTok);
-                        inEscape = "\\".equals(nextTok);
+                        current.append(c);
+                        inEscape = false;
+                    }
+                    i++;
+                    break;
+                case '\\':
+                    current.append(c);
+                    inEscape = true;
+                    i++;
+                    break;
+                default:
+                    int end = i + 1;
+                    while (end < length && !isCommandlineDelimiter(toProcess.charAt(end))) {
+                        end++;
                     }
+                    current.append(toProcess, i, end);
+                    inEscape = false;
+                    i = end;
                     break;
             }
         }
@@ -483,7 +635,11 @@ public abstract class CommandLineUtils {
             throw new CommandLineException("unbalanced quotes in " + toProcess);
         }
 
-        return tokens.toArray(new String[tokens.size()]);
+        return tokens.toArray(new String[0]);
+    }
+
+    private static boolean isCommandlineDelimiter(char c) {
+        return c == '"' || c == '\'' || c == ' ' || c == '\\';
     }
 
     /**
@@ -496,16 +652,59 @@ public abstract class CommandLineUtils {
             return "";
         }
 
-        final StringBuilder result = new StringBuilder();
+        int capacity = 3 * line.length;
+        for (String part : line) {
+            if (part != null) {
+                capacity += part.length();
+            }
+        }
+
+        final StringBuilder result = new StringBuilder(capacity);
         for (int i = 0; i < line.length; i++) {
             if (i > 0) {
                 result.append(' ');
             }
-            result.append(StringUtils.quoteAndEscape(line[i], '\"'));
+            appendQuotedAndEscaped(result, line[i]);
         }
         return result.toString();
     }
 
+    /**
+     * Appends the string the way {@link StringUtils#quoteAndEscape(String, char)} with <code>"</code> quotes it, in a
+     * single pass.
+     */
+    private static void appendQuotedAndEscaped(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append((String) null);
+            return;
+        }
+
+        int length = s.length();
+        if (length > 0 && s.charAt(0) == '"' && s.charAt(length - 1) == '"') {
+            // already quoted
+            sb.append(s);
+            return;
+        }
+
+        boolean quote = false;
+        for (int i = 0; i < length && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == '"' || c == ' ';
+        }
+        if (!quote) {
+            sb.append(s);
+            return;
+        }
+
+        sb.append('"');
+        int start = 0;
+        for (int i = s.indexOf('"'); i >= 0; i = s.indexOf('"', i + 1)) {
+            sb.append(s, start, i).append('\\');
+            start = i;
+        }
+        sb.append(s, start, s.length()).append('"');
+    }
+
     static Properties ensureCaseSensitivity(Map<String, String> envs, boolean preserveKeyCase) {
         Properties envVars = new Properties();
         for (Map.Entry<String, String> entry : envs.entrySet()) {
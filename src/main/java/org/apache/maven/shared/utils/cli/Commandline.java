@@ -22,15 +22,15 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Vector;
 
 import org.apache.maven.shared.utils.Os;
-import org.apache.maven.shared.utils.StringUtils;
 import org.apache.maven.shared.utils.cli.shell.BourneShell;
 import org.apache.maven.shared.utils.cli.shell.CmdShell;
 import org.apache.maven.shared.utils.cli.shell.Shell;
@@ -57,19 +57,74 @@ import org.apache.maven.shared.utils.cli.shell.Shell;
  * The element <code>someelement</code> must provide a method
  * <code>createAcommandline</code> which returns an instance of this class.
  * </p>
+ * <p>
+ * The arguments and environment variables of a command line created by its constructors can be modified from several
+ * threads, every access taking a lock. To build large command lines, or command lines shared between threads, prefer
+ * a {@link Builder}: it does not lock and creates an immutable command line backed by arrays.
+ * </p>
  *
  * @author thomas.haas@softwired-inc.com
  * @author <a href="mailto:stefan.bodewig@epost.de">Stefan Bodewig</a>
  */
 public class Commandline {
+
+    /**
+     * Whether a subclass overrides {@link #getEnvironmentVariables()} or {@link #getArguments(boolean)}, which the
+     * execution and {@link #toString()} must then go through instead of the cached values.
+     */
+    private static final ClassValue<Boolean> ACCESSORS_OVERRIDDEN = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> c = type; c != Commandline.class; c = c.getSuperclass()) {
+                if (declares(c, "getEnvironmentVariables") || declares(c, "getArguments", boolean.class)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean declares(Class<?> type, String name, Class<?>... parameterTypes) {
+            try {
+                type.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
     private final List<Arg> arguments = new Vector<>();
 
+    /**
+     * The environment variables explicitly set on this command line, overlaying the shared system environment
+     * snapshot if {@link #shellEnvironmentInherited} is set. Guards {@link #environment}.
+     */
     private final Map<String, String> envVars = Collections.synchronizedMap(new LinkedHashMap<>());
 
+    /**
+     * The <code>name=value</code> entries of the effective environment, <code>null</code> until computed or after the
+     * environment changed.
+     */
+    private String[] environment;
+
     private Shell shell;
 
     private boolean shellEnvironmentInherited = true;
 
+    private boolean directExecution;
+
+    private int argumentFileThreshold;
+
+    /**
+     * The arguments of a command line created by a {@link Builder}, <code>null</code> if the command line is mutable.
+     */
+    private final String[] builtArguments;
+
+    /**
+     * The arguments of a command line created by a {@link Builder}, masked for display.
+     */
+    private final String[] builtMaskedArguments;
+
     /**
      * Create a new command line object.
      * Shell is autodetected from operating system.
@@ -78,6 +133,8 @@ public class Commandline {
      */
     public Commandline(Shell shell) {
         this.shell = shell;
+        this.builtArguments = null;
+        this.builtMaskedArguments = null;
     }
 
     /**
@@ -88,7 +145,7 @@ public class Commandline {
      * @throws CommandLineException in case of unbalanced quotes
      */
     public Commandline(String toProcess) throws CommandLineException {
-        setDefaultShell();
+        this();
         String[] tmp = CommandLineUtils.translateCommandline(toProcess);
         if ((tmp.length > 0)) {
             setExecutable(tmp[0]);
@@ -104,6 +161,44 @@ public class Commandline {
      */
     public Commandline() {
         setDefaultShell();
+        this.builtArguments = null;
+        this.builtMaskedArguments = null;
+    }
+
+    /**
+     * Creates an immutable command line.
+     *
+     * @param builder the builder
+     */
+    private Commandline(Builder builder) {
+        setDefaultShell();
+        shell.setExecutable(builder.executable);
+        shell.setWorkingDirectory(builder.workingDirectory);
+        shellEnvironmentInherited = builder.shellEnvironmentInherited;
+        directExecution = builder.directExecution;
+        argumentFileThreshold = builder.argumentFileThreshold;
+
+        builtArguments = builder.arguments.toArray(new String[0]);
+        if (builder.maskedArguments.isEmpty()) {
+            builtMaskedArguments = builtArguments;
+        } else {
+            builtMaskedArguments = builtArguments.clone();
+            for (int i = builder.maskedArguments.nextSetBit(0); i >= 0; i = builder.maskedArguments.nextSetBit(i + 1)) {
+                builtMaskedArguments[i] = "*****";
+            }
+        }
+
+        envVars.putAll(builder.envVars);
+        environment = computeEnvironment();
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the command line was created by a {@link Builder}
+     */
+    private void checkMutable() {
+        if (builtArguments != null) {
+            throw new UnsupportedOperationException("The command line was created by a builder and is immutable.");
+        }
     }
 
     /**
@@ -136,6 +231,7 @@ public class Commandline {
      * @return the argument
      */
     public Arg createArg(boolean insertAtStart) {
+        checkMutable();
         Arg argument = new Argument();
         if (insertAtStart) {
             arguments.add(0, argument);
@@ -151,6 +247,7 @@ public class Commandline {
      * @param executable the executable
      */
     public void setExecutable(String executable) {
+        checkMutable();
         shell.setExecutable(executable);
     }
 
@@ -178,7 +275,11 @@ public class Commandline {
      * @param value the appropriate value
      */
     public void addEnvironment(String name, String value) {
-        envVars.put(name, value);
+        checkMutable();
+        synchronized (envVars) {
+            envVars.put(name, value);
+            environment = null;
+        }
     }
 
     /**
@@ -189,32 +290,48 @@ public class Commandline {
     @Deprecated
     public void addSystemEnvironment() {}
 
-    private void copySystemEnvironment() {
-        Properties systemEnvVars = CommandLineUtils.getSystemEnvVars();
-
-        for (Object o : systemEnvVars.keySet()) {
-            String key = (String) o;
-            if (!envVars.containsKey(key)) {
-                addEnvironment(key, systemEnvVars.getProperty(key));
-            }
-        }
-    }
-
     /**
      * Return the list of environment variables.
      *
      * @return an array of all environment variables
      */
     public String[] getEnvironmentVariables() {
-        if (isShellEnvironmentInherited()) {
-            copySystemEnvironment();
+        return getEnvironment().clone();
+    }
+
+    /**
+     * @return the cached entries of the effective environment, must not be modified
+     */
+    private String[] getEnvironment() {
+        if (builtArguments != null) {
+            return environment;
+        }
+        synchronized (envVars) {
+            if (environment == null) {
+                environment = computeEnvironment();
+            }
+            return environment;
         }
+    }
 
-        List<String> environmentVars = new ArrayList<>();
-        for (String name : envVars.keySet()) {
-            String value = envVars.get(name);
-            if (value != null) {
-                environmentVars.add(name + "=" + value);
+    private String[] computeEnvironment() {
+        boolean inherited = isShellEnvironmentInherited();
+        if (inherited && envVars.isEmpty()) {
+            return CommandLineUtils.getSystemEnvironmentEntries();
+        }
+
+        Map<String, String> systemEnvVars =
+                inherited ? CommandLineUtils.getSystemEnvironment() : Collections.<String, String>emptyMap();
+
+        List<String> environmentVars = new ArrayList<>(systemEnvVars.size() + envVars.size());
+        for (Map.Entry<String, String> entry : envVars.entrySet()) {
+            if (entry.getValue() != null) {
+                environmentVars.add(entry.getKey() + "=" + entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : systemEnvVars.entrySet()) {
+            if (!envVars.containsKey(entry.getKey())) {
+                environmentVars.add(entry.getKey() + "=" + entry.getValue());
             }
         }
         return environmentVars.toArray(new String[0]);
@@ -239,20 +356,47 @@ public class Commandline {
     }
 
     /**
-     * @return the shell, executable and all defined arguments without masking any arguments
+     * @param args the arguments for the executable
+     * @return the shell, executable and the given arguments, or only the executable and arguments in direct execution
+     *         mode
      */
-    private String[] getShellCommandline() {
-        return getShellCommandline(false);
+    private String[] getShellCommandline(String[] args) {
+        if (directExecution) {
+            return getDirectCommandline(args);
+        }
+        List<String> shellCommandLine = getShell().getShellCommandLine(args);
+        return shellCommandLine.toArray(new String[shellCommandLine.size()]);
     }
 
     /**
-     * @param mask replace any arguments whose {@code mask} field is {@code true} with asterisks
-     * @return the shell, executable and all defined arguments with masking some arguments if
-     * {@code mask} parameter is on
+     * @param args the arguments for the executable
+     * @return the unquoted executable and the given arguments, to be passed to the operating system as is
      */
-    private String[] getShellCommandline(boolean mask) {
-        List<String> shellCommandLine = getShell().getShellCommandLine(getArguments(mask));
-        return shellCommandLine.toArray(new String[shellCommandLine.size()]);
+    private String[] getDirectCommandline(String[] args) {
+        String executable = shell.getOriginalExecutable();
+
+        if (executable == null) {
+            return args;
+        }
+        String[] result = new String[args.length + 1];
+        result[0] = executable;
+        System.arraycopy(args, 0, result, 1, args.length);
+        return result;
+    }
+
+    /**
+     * Gets the length of the command line made of the executable and all defined arguments separated by spaces, not
+     * counting any quoting.
+     *
+     * @return the length in characters
+     */
+    int getCommandlineLength() {
+        String executable = shell.getOriginalExecutable();
+        int length = executable == null ? 0 : executable.length();
+        for (String argument : effectiveArguments(false)) {
+            length += argument.length() + 1;
+        }
+        return length;
     }
 
     /**
@@ -273,6 +417,29 @@ public class Commandline {
      * @return an array of arguments
      */
     public String[] getArguments(boolean mask) {
+        if (builtArguments != null) {
+            return arguments(mask).clone();
+        }
+        return arguments(mask);
+    }
+
+    /**
+     * @param mask replace any arguments whose {@code mask} field is {@code true} with asterisks
+     * @return the arguments of {@link #getArguments(boolean)}, must not be modified
+     */
+    private String[] effectiveArguments(boolean mask) {
+        return ACCESSORS_OVERRIDDEN.get(getClass()) ? getArguments(mask) : arguments(mask);
+    }
+
+    /**
+     * @param mask replace any arguments whose {@code mask} field is {@code true} with asterisks
+     * @return the arguments, must not be modified
+     */
+    private String[] arguments(boolean mask) {
+        if (builtArguments != null) {
+            return mask ? builtMaskedArguments : builtArguments;
+        }
+
         List<String> result = new ArrayList<>(arguments.size() * 2);
         for (Arg argument : arguments) {
             Argument arg = (Argument) argument;
@@ -299,7 +466,24 @@ public class Commandline {
      * {@inheritDoc}
      */
     public String toString() {
-        return StringUtils.join(getShellCommandline(true), " ");
+        String[] maskedArguments = effectiveArguments(true);
+        if (directExecution) {
+            return CommandLineUtils.toString(getDirectCommandline(maskedArguments));
+        }
+        String[] shellCommandline = getShellCommandline(maskedArguments);
+
+        int capacity = shellCommandline.length;
+        for (String part : shellCommandline) {
+            capacity += part.length();
+        }
+        StringBuilder sb = new StringBuilder(capacity);
+        for (int i = 0; i < shellCommandline.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(shellCommandline[i]);
+        }
+        return sb.toString();
     }
 
     /**
@@ -308,6 +492,7 @@ public class Commandline {
      * @param path the working directory
      */
     public void setWorkingDirectory(String path) {
+        checkMutable();
         shell.setWorkingDirectory(path);
     }
 
@@ -317,6 +502,7 @@ public class Commandline {
      * @param workingDirectory the working directory
      */
     public void setWorkingDirectory(File workingDirectory) {
+        checkMutable();
         shell.setWorkingDirectory(workingDirectory);
     }
 
@@ -331,6 +517,7 @@ public class Commandline {
      * Clear out the arguments but leave the executable in place for another operation.
      */
     public void clearArgs() {
+        checkMutable();
         arguments.clear();
     }
 
@@ -352,7 +539,84 @@ public class Commandline {
      *            <code>false</code> otherwise
      */
     public void setShellEnvironmentInherited(boolean shellEnvironmentInherited) {
-        this.shellEnvironmentInherited = shellEnvironmentInherited;
+        checkMutable();
+        synchronized (envVars) {
+            this.shellEnvironmentInherited = shellEnvironmentInherited;
+            environment = null;
+        }
+    }
+
+    /**
+     * @return the command line length above which the arguments are passed in an argument file, <code>0</code> if
+     *         disabled
+     * @see #setArgumentFileThreshold(int)
+     * @since 3.5.0
+     */
+    public int getArgumentFileThreshold() {
+        return argumentFileThreshold;
+    }
+
+    /**
+     * <p>
+     * Sets the command line length above which {@link CommandLineUtils} passes the arguments in a temporary argument
+     * file as single <code>@&lt;file&gt;</code> argument, to stay below the limits of the operating system. The
+     * length is counted as the executable and the arguments separated by spaces. Arguments starting with
+     * <code>-J</code>, the options of the launcher of the JDK tools, stay on the command line. The argument file is
+     * deleted once the process terminated, or on JVM shutdown if the execution is never awaited.
+     * </p>
+     * <p>
+     * Only enable this for executables supporting argument files in the format of the JDK tools, like
+     * <code>javac</code>, <code>javadoc</code>, <code>jar</code> or <code>java</code> 9+: each argument on its own
+     * line, in double quotes, with backslashes, double quotes and line breaks escaped by a backslash.
+     * {@link #execute()} itself never uses an argument file.
+     * </p>
+     *
+     * @param argumentFileThreshold the length in characters, <code>0</code> to disable argument files (the default)
+     * @since 3.5.0
+     */
+    public void setArgumentFileThreshold(int argumentFileThreshold) {
+        checkMutable();
+        this.argumentFileThreshold = argumentFileThreshold;
+    }
+
+    /**
+     * Indicates whether the command is executed directly instead of through the shell.
+     *
+     * @return <code>true</code> if the command is executed directly, <code>false</code> for the shell (the default)
+     * @see #setDirectExecution(boolean)
+     * @since 3.5.0
+     */
+    public boolean isDirectExecution() {
+        return directExecution;
+    }
+
+    /**
+     * <p>
+     * Specifies whether the command is executed directly instead of through the shell. By default, the command is
+     * handed to the shell, e.g. <code>/bin/sh -c "cd '&lt;dir&gt;' &amp;&amp; '&lt;exe&gt;' '&lt;args&gt;'..."</code>
+     * on Unix, which costs an additional process per execution as well as quoting the arguments and parsing them again.
+     * In direct execution mode the executable and arguments are passed unquoted to the operating system, and the
+     * working directory is set on the process itself.
+     * </p>
+     * <p>
+     * The arguments reach the executable unchanged in both modes, as the shell arguments are quoted to prevent any
+     * expansion. The differences are:
+     * </p>
+     * <ul>
+     * <li>there is no shell: shell scripts need to be executable and start with a <code>#!</code> line, and on
+     * Windows batch files cannot be executed directly;</li>
+     * <li>the executable is looked up on the <code>PATH</code> of the current process, not on the <code>PATH</code>
+     * of the environment passed to the command;</li>
+     * <li>a missing executable fails {@link #execute()} with a {@link CommandLineException} instead of exiting with
+     * the error code of the shell.</li>
+     * </ul>
+     *
+     * @param directExecution <code>true</code> to execute the command directly, <code>false</code> to use the shell
+     * @since 3.5.0
+     */
+    public void setDirectExecution(boolean directExecution) {
+        checkMutable();
+        this.directExecution = directExecution;
     }
 
     /**
@@ -362,15 +626,27 @@ public class Commandline {
      * @throws CommandLineException in case of errors
      */
     public Process execute() throws CommandLineException {
+        return execute(effectiveArguments(false));
+    }
+
+    /**
+     * Execute the command with the given arguments instead of the defined ones.
+     *
+     * @param arguments the arguments for the executable
+     * @return the process
+     * @throws CommandLineException in case of errors
+     */
+    Process execute(String[] arguments) throws CommandLineException {
         Process process;
 
-        String[] environment = getEnvironmentVariables();
+        String[] environment =
+                ACCESSORS_OVERRIDDEN.get(getClass()) ? getEnvironmentVariables() : getEnvironment();
 
         File workingDir = shell.getWorkingDirectory();
 
         try {
             if (workingDir == null) {
-                process = Runtime.getRuntime().exec(getShellCommandline(), environment);
+                process = Runtime.getRuntime().exec(getShellCommandline(arguments), environment);
             } else {
                 if (!workingDir.exists()) {
                     throw new CommandLineException(
@@ -380,7 +656,7 @@ public class Commandline {
                             "Path \"" + workingDir.getPath() + "\" does not specify a directory.");
                 }
 
-                process = Runtime.getRuntime().exec(getShellCommandline(), environment, workingDir);
+                process = Runtime.getRuntime().exec(getShellCommandline(arguments), environment, workingDir);
             }
         } catch (IOException ex) {
             throw new CommandLineException("Error while executing process.", ex);
@@ -399,7 +675,8 @@ public class Commandline {
     }
 
     /**
-     * Get the shell to be used in this command line.
+     * Get the shell to be used in this command line. The shell of a command line created by a {@link Builder} must
+     * not be modified.
      *
      * @return the shell
      */
@@ -407,6 +684,169 @@ public class Commandline {
         return shell;
     }
 
+    /**
+     * <p>
+     * Builds an immutable {@link Commandline}. Unlike the mutators of {@link Commandline}, the methods of a builder
+     * do not lock: a builder must be used by one thread at a time, or synchronized externally.
+     * </p>
+     * <p>
+     * The command lines created by {@link #build()} keep their arguments and environment in arrays, which are neither
+     * copied nor locked when the command line is executed. Their mutators throw an
+     * {@link UnsupportedOperationException}. As for any immutable object, they can be used by several threads at
+     * once once safely published, e.g. through a concurrent collection or an <code>ExecutorService</code>. A builder
+     * can be reused: command lines built before are not affected by later changes.
+     * </p>
+     *
+     * @since 3.5.0
+     */
+    public static final class Builder {
+
+        private String executable;
+
+        private final List<String> arguments = new ArrayList<>();
+
+        private final BitSet maskedArguments = new BitSet();
+
+        private final Map<String, String> envVars = new LinkedHashMap<>();
+
+        private File workingDirectory;
+
+        private boolean shellEnvironmentInherited = true;
+
+        private boolean directExecution;
+
+        private int argumentFileThreshold;
+
+        /**
+         * @param executable the executable to run
+         * @return this builder
+         * @see Commandline#setExecutable(String)
+         */
+        public Builder executable(String executable) {
+            this.executable = executable;
+            return this;
+        }
+
+        /**
+         * @param argument the argument to add
+         * @return this builder
+         */
+        public Builder addArgument(String argument) {
+            if (argument != null) {
+                arguments.add(argument);
+            }
+            return this;
+        }
+
+        /**
+         * @param argument the argument to add, replaced by asterisks when the command line is displayed
+         * @return this builder
+         * @see Arg#setMask(boolean)
+         */
+        public Builder addMaskedArgument(String argument) {
+            if (argument != null) {
+                maskedArguments.set(arguments.size());
+                arguments.add(argument);
+            }
+            return this;
+        }
+
+        /**
+         * @param arguments the arguments to add
+         * @return this builder
+         */
+        public Builder addArguments(String... arguments) {
+            for (String argument : arguments) {
+                addArgument(argument);
+            }
+            return this;
+        }
+
+        /**
+         * @param arguments the arguments to add
+         * @return this builder
+         */
+        public Builder addArguments(Collection<String> arguments) {
+            for (String argument : arguments) {
+                addArgument(argument);
+            }
+            return this;
+        }
+
+        /**
+         * @param line the arguments to add, separated by spaces and quoted as needed
+         * @return this builder
+         * @throws CommandLineException in case of unbalanced quotes
+         * @see Arg#setLine(String)
+         */
+        public Builder addLine(String line) throws CommandLineException {
+            if (line != null) {
+                addArguments(CommandLineUtils.translateCommandline(line));
+            }
+            return this;
+        }
+
+        /**
+         * @param name the name of the environment variable
+         * @param value the value of the environment variable
+         * @return this builder
+         * @see Commandline#addEnvironment(String, String)
+         */
+        public Builder addEnvironment(String name, String value) {
+            envVars.put(name, value);
+            return this;
+        }
+
+        /**
+         * @param workingDirectory the working directory
+         * @return this builder
+         * @see Commandline#setWorkingDirectory(File)
+         */
+        public Builder workingDirectory(File workingDirectory) {
+            this.workingDirectory = workingDirectory;
+            return this;
+        }
+
+        /**
+         * @param shellEnvironmentInherited <code>true</code> if the environment variables should be propagated,
+         *            <code>false</code> otherwise
+         * @return this builder
+         * @see Commandline#setShellEnvironmentInherited(boolean)
+         */
+        public Builder shellEnvironmentInherited(boolean shellEnvironmentInherited) {
+            this.shellEnvironmentInherited = shellEnvironmentInherited;
+            return this;
+        }
+
+        /**
+         * @param directExecution <code>true</code> to execute the command directly, <code>false</code> to use the
+         *            shell
+         * @return this builder
+         * @see Commandline#setDirectExecution(boolean)
+         */
+        public Builder directExecution(boolean directExecution) {
+            this.directExecution = directExecution;
+            return this;
+        }
+
+        /**
+         * @param argumentFileThreshold the length in characters, <code>0</code> to disable argument files
+         * @return this builder
+         * @see Commandline#setArgumentFileThreshold(int)
+         */
+        public Builder argumentFileThreshold(int argumentFileThreshold) {
+            this.argumentFileThreshold = argumentFileThreshold;
+            return this;
+        }
+
+        /**
+         * @return a new immutable command line, using the shell of the operating system
+         */
+        public Commandline build() {
+            return new Commandline(this);
+        }
+    }
+
     /**
      * A single command line argument.
      */
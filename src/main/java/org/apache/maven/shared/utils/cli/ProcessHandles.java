@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Access to the Java 9+ <code>java.lang.ProcessHandle</code> API through reflection, to keep running on Java 8. All
+ * methods degrade gracefully when the API is not available.
+ */
+final class ProcessHandles {
+
+    private static final Method TO_HANDLE;
+
+    private static final Method INFO;
+
+    private static final Method TOTAL_CPU_DURATION;
+
+    private static final Method DESCENDANTS;
+
+    private static final Method IS_ALIVE;
+
+    private static final Method PID;
+
+    private static final Method COMMAND;
+
+    private static final Method DESTROY;
+
+    private static final Method DESTROY_FORCIBLY;
+
+    static {
+        Method toHandle = null;
+        Method info = null;
+        Method totalCpuDuration = null;
+        Method descendants = null;
+        Method isAlive = null;
+        Method pid = null;
+        Method command = null;
+        Method destroy = null;
+        Method destroyForcibly = null;
+        try {
+            toHandle = Process.class.getMethod("toHandle");
+            Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+            info = processHandle.getMethod("info");
+            totalCpuDuration = Class.forName("java.lang.ProcessHandle$Info").getMethod("totalCpuDuration");
+            descendants = processHandle.getMethod("descendants");
+            isAlive = processHandle.getMethod("isAlive");
+            pid = processHandle.getMethod("pid");
+            command = Class.forName("java.lang.ProcessHandle$Info").getMethod("command");
+            destroy = processHandle.getMethod("destroy");
+            destroyForcibly = processHandle.getMethod("destroyForcibly");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Java 8
+            toHandle = null;
+        }
+        TO_HANDLE = toHandle;
+        INFO = info;
+        TOTAL_CPU_DURATION = totalCpuDuration;
+        DESCENDANTS = descendants;
+        IS_ALIVE = isAlive;
+        PID = pid;
+        COMMAND = command;
+        DESTROY = destroy;
+        DESTROY_FORCIBLY = destroyForcibly;
+    }
+
+    private ProcessHandles() {}
+
+    /**
+     * @return <code>true</code> if the <code>ProcessHandle</code> API is available on the running JVM
+     */
+    static boolean isAvailable() {
+        return TO_HANDLE != null;
+    }
+
+    /**
+     * @param process a process
+     * @return the <code>ProcessHandle</code> of the process, <code>null</code> if not available
+     */
+    static Object toHandle(Process process) {
+        if (TO_HANDLE == null) {
+            return null;
+        }
+        try {
+            return TO_HANDLE.invoke(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param handle the <code>ProcessHandle</code> of a running process
+     * @return the CPU time consumed by the process so far in nanoseconds, <code>-1</code> if not available
+     */
+    static long getTotalCpuNanos(Object handle) {
+        try {
+            Optional<?> duration = (Optional<?>) TOTAL_CPU_DURATION.invoke(INFO.invoke(handle));
+            return duration.isPresent() ? ((Duration) duration.get()).toNanos() : -1;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param process a process
+     * @return the <code>ProcessHandle</code>s of the currently running descendants of the process, empty if not
+     *         available
+     */
+    static List<Object> getDescendants(Process process) {
+        Object handle = toHandle(process);
+        if (handle == null) {
+            return Collections.emptyList();
+        }
+        try {
+            return ((Stream<?>) DESCENDANTS.invoke(handle)).collect(Collectors.<Object>toList());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param handle a <code>ProcessHandle</code>
+     * @return <code>true</code> if the process is alive
+     */
+    static boolean isAlive(Object handle) {
+        try {
+            return (Boolean) IS_ALIVE.invoke(handle);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param handle a <code>ProcessHandle</code>
+     * @return the native process id, <code>-1</code> if not available
+     */
+    static long getPid(Object handle) {
+        try {
+            return (Long) PID.invoke(handle);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param handle a <code>ProcessHandle</code>
+     * @return the executable of the process, <code>null</code> if not available
+     */
+    static String getCommand(Object handle) {
+        try {
+            Optional<?> command = (Optional<?>) COMMAND.invoke(INFO.invoke(handle));
+            return command.isPresent() ? (String) command.get() : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Requests a process to terminate.
+     *
+     * @param handle a <code>ProcessHandle</code>
+     * @param forcibly <code>true</code> to kill the process, <code>false</code> to request a graceful termination
+     */
+    static void destroy(Object handle, boolean forcibly) {
+        try {
+            (forcibly ? DESTROY_FORCIBLY : DESTROY).invoke(handle);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not allowed or already gone
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how {@link CommandLineUtils} terminates a process which timed out. By default the forked process is only
+ * asked to terminate, like earlier versions did. Optionally its descendants are terminated as well, and the processes
+ * still alive once a grace period elapsed are killed. The terminated processes are reported by
+ * {@link CommandLineTimeOutException#getTerminatedProcesses()}.
+ *
+ * @see CommandLineExecutionOptions#setTerminationPolicy(ProcessTerminationPolicy)
+ * @since 3.5.0
+ */
+public class ProcessTerminationPolicy {
+
+    /**
+     * Interval in milliseconds in which the processes are checked for having terminated during the grace period.
+     */
+    private static final long TERMINATION_CHECK_INTERVAL_MS = 20;
+
+    private long gracePeriodMillis;
+
+    private boolean processTree;
+
+    /**
+     * @return the grace period in milliseconds before the processes are killed
+     * @see #setGracePeriodMillis(long)
+     */
+    public long getGracePeriodMillis() {
+        return gracePeriodMillis;
+    }
+
+    /**
+     * Sets the time the processes are given to terminate gracefully, e.g. to flush their output or remove temporary
+     * files, before they are killed. On Unix they receive <code>SIGTERM</code> first and <code>SIGKILL</code> once the
+     * grace period elapsed. Without a grace period, the default, the processes are asked to terminate but neither
+     * awaited nor killed.
+     *
+     * @param gracePeriodMillis the grace period in milliseconds, zero or negative to not kill the processes
+     */
+    public void setGracePeriodMillis(long gracePeriodMillis) {
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    /**
+     * @return <code>true</code> if the descendants of the process are terminated as well
+     * @see #setProcessTree(boolean)
+     */
+    public boolean isProcessTree() {
+        return processTree;
+    }
+
+    /**
+     * <p>
+     * Terminates the descendants of the process as well, disabled by default. Otherwise only the forked process is
+     * terminated, which is usually the shell running the command: the command itself and anything it started keep
+     * running, and may keep the output streams open.
+     * </p>
+     * <p>
+     * Requires Java 9 or later, on Java 8 only the forked process is terminated. Descendants which were re-parented
+     * before the timeout, e.g. by a daemon detaching itself, are only terminated if they were observed while the
+     * process was running, see {@link CommandLineExecutionOptions#setProcessTreeAware(boolean)}.
+     * </p>
+     *
+     * @param processTree <code>true</code> to terminate the whole process tree, <code>false</code> to terminate the
+     *            forked process only
+     */
+    public void setProcessTree(boolean processTree) {
+        this.processTree = processTree;
+    }
+
+    /**
+     * Terminates the process and, if enabled, its descendants.
+     *
+     * @param process the process to terminate
+     * @param observedDescendants the <code>ProcessHandle</code>s of the descendants observed while the process was
+     *            running
+     * @return the terminated processes, the process itself first
+     */
+    List<TerminatedProcess> terminate(Process process, Collection<Object> observedDescendants) {
+        Object handle = ProcessHandles.toHandle(process);
+
+        // snapshot the tree before terminating anything: descendants get re-parented once their parent is gone
+        Set<Object> targets = new LinkedHashSet<>();
+        if (processTree && handle != null) {
+            targets.addAll(ProcessHandles.getDescendants(process));
+            for (Object descendant : observedDescendants) {
+                if (ProcessHandles.isAlive(descendant)) {
+                    targets.add(descendant);
+                }
+            }
+        }
+
+        List<Target> tree = new ArrayList<>(targets.size() + 1);
+        tree.add(new Target(process, handle));
+        for (Object target : targets) {
+            tree.add(new Target(null, target));
+        }
+
+        for (Target target : tree) {
+            target.destroy(false);
+        }
+
+        boolean interrupted = false;
+        if (gracePeriodMillis > 0) {
+            try {
+                awaitTermination(tree);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        List<TerminatedProcess> terminated = new ArrayList<>(tree.size());
+        for (Target target : tree) {
+            boolean forcibly = gracePeriodMillis > 0 && target.isAlive();
+            if (forcibly) {
+                target.destroy(true);
+            }
+            terminated.add(new TerminatedProcess(target.pid, target.command, target.process == null, forcibly));
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return terminated;
+    }
+
+    private void awaitTermination(List<Target> tree) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gracePeriodMillis);
+        for (Target target : tree) {
+            while (target.isAlive()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                long wait = Math.min(TERMINATION_CHECK_INTERVAL_MS, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                if (target.process != null) {
+                    target.process.waitFor(wait, TimeUnit.MILLISECONDS);
+                } else {
+                    Thread.sleep(wait);
+                }
+            }
+        }
+    }
+
+    /**
+     * A process to terminate, either the forked {@link Process} or a <code>ProcessHandle</code> of a descendant. The
+     * pid and command are captured upfront, as they are no longer available once the process terminated.
+     */
+    private static final class Target {
+
+        private final Process process;
+
+        private final Object handle;
+
+        private final long pid;
+
+        private final String command;
+
+        Target(Process process, Object handle) {
+            this.process = process;
+            this.handle = handle;
+            this.pid = handle != null ? ProcessHandles.getPid(handle) : -1;
+            this.command = handle != null ? ProcessHandles.getCommand(handle) : null;
+        }
+
+        boolean isAlive() {
+            return process != null ? process.isAlive() : ProcessHandles.isAlive(handle);
+        }
+
+        void destroy(boolean forcibly) {
+            if (process == null) {
+                ProcessHandles.destroy(handle, forcibly);
+            } else if (forcibly) {
+                process.destroyForcibly();
+            } else {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * A process terminated because of a timeout.
+     *
+     * @since 3.5.0
+     */
+    public static final class TerminatedProcess implements Serializable {
+
+        private static final long serialVersionUID = -3817400738052251392L;
+
+        private final long pid;
+
+        private final String command;
+
+        private final boolean descendant;
+
+        private final boolean forcibly;
+
+        TerminatedProcess(long pid, String command, boolean descendant, boolean forcibly) {
+            this.pid = pid;
+            this.command = command;
+            this.descendant = descendant;
+            this.forcibly = forcibly;
+        }
+
+        /**
+         * @return the native process id, <code>-1</code> if not available
+         */
+        public long getPid() {
+            return pid;
+        }
+
+        /**
+         * @return the executable of the process, <code>null</code> if not available
+         */
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return <code>true</code> for a descendant, <code>false</code> for the forked process itself
+         */
+        public boolean isDescendant() {
+            return descendant;
+        }
+
+        /**
+         * @return <code>true</code> if the process had to be killed once the grace period elapsed, <code>false</code>
+         *         if it was only asked to terminate
+         */
+        public boolean isForcibly() {
+            return forcibly;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return (descendant ? "descendant " : "process ") + (pid < 0 ? "?" : String.valueOf(pid))
+                    + (command != null ? " (" + command + ")" : "") + (forcibly ? " killed" : " terminated");
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * <p>
+ * Pumps the output of many processes from a few shared threads, instead of a thread per stream, see
+ * {@link CommandLineExecutionOptions#setStreamPolling(boolean)}. The JDK offers no way to wait for the readiness of
+ * process pipes, so each poller thread checks in turn how many bytes its streams have available and pumps them through
+ * {@link StreamPumper#pollAvailable()}, backing off when no stream made progress.
+ * </p>
+ * <p>
+ * Once a process exited, its streams only hold the output left to be read: they are handed off to be drained by
+ * {@link StreamPumper#drain()} on a short-lived thread, which also reports EOF. The drain never runs on a poller
+ * thread, as a stream held open by a left-over child of the process would block it until EOF.
+ * </p>
+ */
+final class StreamPoller {
+
+    /**
+     * The longest time in milliseconds a poller thread sleeps when its streams make no progress, bounding the latency
+     * of the output and of detecting a process exit.
+     */
+    private static final long MAX_IDLE_SLEEP_MS = 10;
+
+    private static final long MIN_IDLE_SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final PollerThread[] pollers;
+
+    private final AtomicInteger nextPoller = new AtomicInteger();
+
+    private final ExecutorService drainExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "StreamPoller-drain-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private StreamPoller(int pollerCount) {
+        pollers = new PollerThread[pollerCount];
+        for (int i = 0; i < pollerCount; i++) {
+            pollers[i] = new PollerThread();
+            pollers[i].start();
+        }
+    }
+
+    /**
+     * @return the shared instance, with a poller thread per four processors, at least one and at most four
+     */
+    static StreamPoller getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Pumps the streams of the process until they are drained.
+     *
+     * @param process the process the streams belong to
+     * @param pumpExecutor the executor draining the streams once the process exited, <code>null</code> for a shared
+     *            one
+     * @param pumpers the pumpers of the streams, not started
+     */
+    void register(Process process, @Nullable Executor pumpExecutor, StreamPumper... pumpers) {
+        Registration registration =
+                new Registration(process, pumpExecutor != null ? pumpExecutor : drainExecutor, pumpers);
+        PollerThread poller = pollers[Math.floorMod(nextPoller.getAndIncrement(), pollers.length)];
+        poller.incoming.add(registration);
+        LockSupport.unpark(poller);
+    }
+
+    /**
+     * The streams of a process.
+     */
+    private static final class Registration {
+
+        private final Process process;
+
+        private final Executor drainExecutor;
+
+        private final List<StreamPumper> pumpers = new ArrayList<>(2);
+
+        Registration(Process process, Executor drainExecutor, StreamPumper... pumpers) {
+            this.process = process;
+            this.drainExecutor = drainExecutor;
+            for (StreamPumper pumper : pumpers) {
+                this.pumpers.add(pumper);
+            }
+        }
+
+        /**
+         * Pumps the available bytes of the streams.
+         *
+         * @return the number of bytes pumped, <code>-1</code> once all the streams are done or handed off
+         */
+        long poll() {
+            boolean exited = !process.isAlive();
+            long pumped = 0;
+            for (Iterator<StreamPumper> it = pumpers.iterator(); it.hasNext(); ) {
+                StreamPumper pumper = it.next();
+                long byteCount = pumper.getByteCount();
+                if (!pumper.pollAvailable()) {
+                    it.remove();
+                } else if (exited) {
+                    it.remove();
+                    handOff(pumper);
+                }
+                pumped += pumper.getByteCount() - byteCount;
+            }
+            return pumpers.isEmpty() ? -1 : pumped;
+        }
+
+        private void handOff(StreamPumper pumper) {
+            try {
+                drainExecutor.execute(pumper::drain);
+            } catch (RejectedExecutionException e) {
+                // e.g. the executor of a closed batch: draining here would block the poller as long as a left-over
+                // child holds the stream open
+                Thread thread = new Thread(pumper::drain, "StreamPoller-drain-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private static final class PollerThread extends Thread {
+
+        private final Queue<Registration> incoming = new ConcurrentLinkedQueue<>();
+
+        private final List<Registration> registrations = new ArrayList<>();
+
+        PollerThread() {
+            super("StreamPoller-" + THREAD_COUNTER.incrementAndGet());
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long idleSleepNanos = MIN_IDLE_SLEEP_NANOS;
+            while (true) {
+                for (Registration registration = incoming.poll();
+                        registration != null;
+                        registration = incoming.poll()) {
+                    registrations.add(registration);
+                }
+
+                if (registrations.isEmpty()) {
+                    // woken up by the next registration
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                boolean progress = false;
+                for (Iterator<Registration> it = registrations.iterator(); it.hasNext(); ) {
+                    long pumped;
+                    try {
+                        pumped = it.next().poll();
+                    } catch (RuntimeException e) {
+                        // a failing executor must not stop the polling of the other processes
+                        pumped = -1;
+                    }
+                    if (pumped < 0) {
+                        it.remove();
+                    } else if (pumped > 0) {
+                        progress = true;
+                    }
+                }
+
+                if (progress) {
+                    idleSleepNanos = MIN_IDLE_SLEEP_NANOS;
+                } else {
+                    LockSupport.parkNanos(this, idleSleepNanos);
+                    idleSleepNanos = Math.min(idleSleepNanos * 2, TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_SLEEP_MS));
+                }
+            }
+        }
+    }
+
+    private static final class Holder {
+        private static final StreamPoller INSTANCE =
+                new StreamPoller(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 4)));
+    }
+}
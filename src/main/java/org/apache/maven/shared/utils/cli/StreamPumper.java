@@ -19,11 +19,16 @@
 package org.apache.maven.shared.utils.cli;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 import org.jspecify.annotations.Nullable;
 
@@ -38,8 +43,20 @@ public class StreamPumper extends AbstractStreamHandler {
 
     private final StreamConsumer consumer;
 
+    private final CountingInputStream counter;
+
+    private final Charset charset;
+
+    /**
+     * The decoding state when pumped through {@link #pollAvailable()} and {@link #drain()} instead of {@link #run()},
+     * created on first use.
+     */
+    private LineDecoder lineDecoder;
+
     private volatile Exception exception = null;
 
+    private volatile long lineCount;
+
     private static final int SIZE = 1024;
 
     /**
@@ -47,7 +64,7 @@ public class StreamPumper extends AbstractStreamHandler {
      * @param consumer {@link StreamConsumer}
      */
     public StreamPumper(InputStream in, StreamConsumer consumer) {
-        this(new InputStreamReader(in), consumer);
+        this(in, consumer, null);
     }
 
     /**
@@ -56,30 +73,36 @@ public class StreamPumper extends AbstractStreamHandler {
      * @param charset {@link Charset}
      */
     public StreamPumper(InputStream in, StreamConsumer consumer, @Nullable Charset charset) {
-        this(null == charset ? new InputStreamReader(in) : new InputStreamReader(in, charset), consumer);
+        this(new CountingInputStream(in), consumer, charset);
+    }
+
+    private StreamPumper(CountingInputStream in, StreamConsumer consumer, @Nullable Charset charset) {
+        this(
+                null == charset ? new InputStreamReader(in) : new InputStreamReader(in, charset),
+                consumer,
+                in,
+                null == charset ? Charset.defaultCharset() : charset);
     }
 
     /**
      * @param in {@link Reader}
      * @param consumer {@link StreamConsumer}
+     * @param counter the stream underlying the reader, counting the bytes read
+     * @param charset the charset of the reader
      */
-    private StreamPumper(Reader in, StreamConsumer consumer) {
+    private StreamPumper(Reader in, StreamConsumer consumer, CountingInputStream counter, Charset charset) {
         super();
         this.in = new BufferedReader(in, SIZE);
         this.consumer = consumer;
+        this.counter = counter;
+        this.charset = charset;
     }
 
     /** Run it. */
     public void run() {
         try {
             for (String line = in.readLine(); line != null; line = in.readLine()) {
-                try {
-                    if (exception == null) {
-                        consumeLine(line);
-                    }
-                } catch (Exception t) {
-                    exception = t;
-                }
+                pumpLine(line);
             }
         } catch (IOException e) {
             if (!isDisabled()) {
@@ -102,6 +125,96 @@ public class StreamPumper extends AbstractStreamHandler {
         }
     }
 
+    /**
+     * Pumps the bytes which can be read without blocking, as an alternative to {@link #run()} used by
+     * {@link StreamPoller}. The lines are split and passed to the consumer as {@link #run()} does, the last incomplete
+     * line being kept until more bytes arrive. Only one thread at a time may pump.
+     *
+     * @return <code>false</code> if the pumper is done, because the stream failed or was closed
+     */
+    boolean pollAvailable() {
+        if (isDone()) {
+            return false;
+        }
+        try {
+            LineDecoder decoder = getLineDecoder();
+            for (int available = counter.available(); available > 0; available = counter.available()) {
+                if (!decoder.read(Math.min(available, decoder.bytes.remaining()))) {
+                    finish(decoder, null);
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            finish(lineDecoder, e);
+            return false;
+        }
+    }
+
+    /**
+     * Pumps the remaining bytes until EOF, blocking, after {@link #pollAvailable()}.
+     */
+    void drain() {
+        if (isDone()) {
+            return;
+        }
+        LineDecoder decoder = null;
+        IOException failure = null;
+        try {
+            decoder = getLineDecoder();
+            while (decoder.read(decoder.bytes.remaining())) {
+                // next chunk
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            finish(decoder, failure);
+        }
+    }
+
+    private LineDecoder getLineDecoder() {
+        if (lineDecoder == null) {
+            lineDecoder = new LineDecoder();
+        }
+        return lineDecoder;
+    }
+
+    /**
+     * Passes the pending incomplete line, closes the stream and marks the pumper done.
+     */
+    private void finish(@Nullable LineDecoder decoder, @Nullable IOException failure) {
+        if (failure != null && !isDisabled()) {
+            exception = failure;
+        }
+        if (decoder != null && failure == null) {
+            decoder.flush();
+        }
+        try {
+            counter.close();
+        } catch (final IOException e) {
+            if (!isDisabled() && this.exception == null) {
+                this.exception = e;
+            }
+        }
+
+        synchronized (this) {
+            setDone();
+
+            this.notifyAll();
+        }
+    }
+
+    private void pumpLine(String line) {
+        lineCount++;
+        try {
+            if (exception == null) {
+                consumeLine(line);
+            }
+        } catch (Exception t) {
+            exception = t;
+        }
+    }
+
     /**
      * Flush.
      *
@@ -129,9 +242,183 @@ public class StreamPumper extends AbstractStreamHandler {
         return exception;
     }
 
+    /**
+     * @return the number of bytes read from the stream so far
+     */
+    long getByteCount() {
+        return counter.byteCount;
+    }
+
+    /**
+     * @return the number of lines read from the stream so far
+     */
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} when the first byte was read, <code>0</code> if nothing was read yet
+     */
+    long getFirstByteNanos() {
+        return counter.firstByteNanos;
+    }
+
+    /**
+     * @return <code>true</code> if the pumper is currently waiting for data from the stream
+     */
+    boolean isReading() {
+        return counter.reading;
+    }
+
     private void consumeLine(String line) throws IOException {
         if (consumer != null && !isDisabled()) {
             consumer.consumeLine(line);
         }
     }
+
+    /**
+     * Decodes the bytes of the stream and splits them into lines like {@link BufferedReader#readLine()}: a line is
+     * terminated by <code>\n</code>, <code>\r</code> or <code>\r\n</code>, and a last line without terminator is
+     * passed at EOF. Malformed input is replaced, as {@link InputStreamReader} does.
+     */
+    private class LineDecoder {
+
+        private final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private final ByteBuffer bytes = ByteBuffer.allocate(SIZE * 8);
+
+        private final CharBuffer chars = CharBuffer.allocate(SIZE * 8);
+
+        private final StringBuilder line = new StringBuilder(SIZE / 8);
+
+        private boolean skipLineFeed;
+
+        private boolean hasLine;
+
+        /**
+         * Reads at most the given number of bytes, blocking until at least one is available, and passes the lines
+         * completed.
+         *
+         * @return <code>false</code> at EOF
+         */
+        boolean read(int length) throws IOException {
+            int n = counter.read(bytes.array(), bytes.arrayOffset() + bytes.position(), length);
+            if (n < 0) {
+                return false;
+            }
+            bytes.position(bytes.position() + n);
+            bytes.flip();
+            decode(false);
+            bytes.compact();
+            return true;
+        }
+
+        /**
+         * Passes the last line at EOF.
+         */
+        void flush() {
+            bytes.flip();
+            decode(true);
+            decoder.flush(chars);
+            splitLines();
+            if (hasLine) {
+                hasLine = false;
+                pumpLine(line.toString());
+            }
+        }
+
+        private void decode(boolean endOfInput) {
+            while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+                splitLines();
+            }
+            splitLines();
+        }
+
+        private void splitLines() {
+            chars.flip();
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    skipLineFeed = c == '\r';
+                    String s = line.toString();
+                    line.setLength(0);
+                    hasLine = false;
+                    pumpLine(s);
+                } else {
+                    line.append(c);
+                    hasLine = true;
+                }
+            }
+            chars.clear();
+        }
+    }
+
+    /**
+     * Counts the bytes passing through, records when the first one arrived and whether a read is in progress.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private volatile long byteCount;
+
+        private volatile long firstByteNanos;
+
+        private volatile boolean reading;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            reading = true;
+            try {
+                int b = super.read();
+                if (b >= 0) {
+                    count(1);
+                }
+                return b;
+            } finally {
+                reading = false;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            reading = true;
+            try {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    count(n);
+                }
+                return n;
+            } finally {
+                reading = false;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                count(skipped);
+            }
+            return skipped;
+        }
+
+        private void count(long n) {
+            if (byteCount == 0) {
+                firstByteNanos = System.nanoTime();
+            }
+            // only the pumping thread writes
+            byteCount += n;
+        }
+    }
 }
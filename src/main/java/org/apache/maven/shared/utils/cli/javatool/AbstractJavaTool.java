@@ -19,14 +19,21 @@
 package org.apache.maven.shared.utils.cli.javatool;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.maven.shared.utils.Os;
 import org.apache.maven.shared.utils.StringUtils;
+import org.apache.maven.shared.utils.cli.CapturingStreamConsumer;
 import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.apache.maven.shared.utils.cli.CommandLineResult;
+import org.apache.maven.shared.utils.cli.CommandLineTimeOutException;
 import org.apache.maven.shared.utils.cli.CommandLineUtils;
 import org.apache.maven.shared.utils.cli.Commandline;
 import org.apache.maven.shared.utils.cli.StreamConsumer;
@@ -41,6 +48,59 @@ import org.slf4j.LoggerFactory;
  * @since 0.5
  */
 public abstract class AbstractJavaTool<Request extends JavaToolRequest> implements JavaTool<Request> {
+    /**
+     * The default number of executions after which a worker JVM is recycled.
+     *
+     * @see #setWorkerMaxRuns(int)
+     * @since 3.5.0
+     */
+    public static final int DEFAULT_WORKER_MAX_RUNS = 100;
+
+    /**
+     * The executables of the JDK found without toolchain by {@link #findJavaToolExecutable()}, keyed by tool name and
+     * the environment the lookup depends on, to avoid probing the file system on each execution. The executables found
+     * through a toolchain are only remembered by the tool instance, and failed lookups are not cached.
+     */
+    private static final Map<String, String> EXECUTABLES = new ConcurrentHashMap<>();
+
+    /**
+     * The <code>findTool(String)</code> method of each toolchain class.
+     */
+    private static final ClassValue<Optional<Method>> FIND_TOOL_METHODS = new ClassValue<Optional<Method>>() {
+        @Override
+        protected Optional<Method> computeValue(Class<?> type) {
+            try {
+                return Optional.of(type.getMethod("findTool", String.class));
+            } catch (NoSuchMethodException e) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    /**
+     * The <code>java.util.spi.ToolProvider</code>s of the running JDK by tool name, looked up on first use.
+     */
+    private static final Map<String, Optional<Object>> TOOL_PROVIDERS = new ConcurrentHashMap<>();
+
+    private static final Method FIND_FIRST_TOOL_PROVIDER;
+
+    private static final Method RUN_TOOL_PROVIDER;
+
+    static {
+        Method findFirst = null;
+        Method run = null;
+        try {
+            Class<?> toolProvider = Class.forName("java.util.spi.ToolProvider");
+            findFirst = toolProvider.getMethod("findFirst", String.class);
+            run = toolProvider.getMethod("run", PrintWriter.class, PrintWriter.class, String[].class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Java 8
+            findFirst = null;
+        }
+        FIND_FIRST_TOOL_PROVIDER = findFirst;
+        RUN_TOOL_PROVIDER = run;
+    }
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     /**
@@ -53,11 +113,41 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
      */
     private String javaToolFile;
 
+    /**
+     * The location of the java executable running the worker JVMs.
+     */
+    private String javaExecutable;
+
     /**
      * Optional toolChain used to find java tool executable file.
      */
     private Object toolchain;
 
+    /**
+     * The command line length above which the arguments are passed in an argument file, <code>0</code> if disabled.
+     */
+    private int argumentFileThreshold;
+
+    /**
+     * Run the tool in-process through its <code>ToolProvider</code> when available.
+     */
+    private boolean useToolProvider;
+
+    /**
+     * The number of idle worker JVMs to keep, <code>0</code> if workers are disabled.
+     */
+    private int workerPoolSize;
+
+    /**
+     * The number of executions after which a worker JVM is recycled, <code>0</code> for no limit.
+     */
+    private int workerMaxRuns = DEFAULT_WORKER_MAX_RUNS;
+
+    /**
+     * The time in seconds after which a forked tool or its worker JVM is killed, <code>0</code> for no timeout.
+     */
+    private int timeoutInSeconds;
+
     /**
      * @param javaToolName the name of the java tool
      */
@@ -67,6 +157,12 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
 
     /**
      * Create the command line object given the request.
+     * <p>
+     * When the tool may run without being forked, see {@link #setUseToolProvider(boolean)} and
+     * {@link #setWorkerPoolSize(int)}, the command line is first created with the name of the tool as location, and
+     * its executable is replaced by the location of the tool if it has to be forked after all. A command line which
+     * cannot be modified, as created by a {@link Commandline.Builder}, is then created a second time for the request.
+     * </p>
      *
      * @param request      user request on the java tool
      * @param javaToolFileLocation location of the java tool file to use
@@ -94,10 +190,103 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
         this.toolchain = toolchain;
     }
 
+    /**
+     * Sets the command line length above which the arguments are passed to the tool in a temporary
+     * <code>@argfile</code> instead of on the command line. Only enable this for tools supporting argument files, like
+     * <code>javac</code>, <code>javadoc</code>, <code>jar</code> or <code>java</code> 9+.
+     *
+     * @param argumentFileThreshold the length in characters, <code>0</code> to disable argument files (the default)
+     * @see Commandline#setArgumentFileThreshold(int)
+     * @since 3.5.0
+     */
+    public void setArgumentFileThreshold(int argumentFileThreshold) {
+        this.argumentFileThreshold = argumentFileThreshold;
+    }
+
+    /**
+     * <p>
+     * Runs the tool in-process through the <code>java.util.spi.ToolProvider</code> of the running JDK, disabled by
+     * default. This saves the startup of a JVM per execution for the tools having a provider, like <code>javac</code>,
+     * <code>javadoc</code>, <code>jar</code>, <code>jlink</code> or <code>jdeps</code>.
+     * </p>
+     * <p>
+     * The tool is still forked when no provider exists (notably on Java 8), when a toolchain is set, when the command
+     * line has a working directory or when it passes <code>-J</code> options to the launcher. The tool then shares
+     * the JVM of the caller: environment variables added to the command line are ignored, it cannot read from stdin
+     * and {@link JavaToolResult#getExecutionResult()} is not available.
+     * </p>
+     *
+     * @param useToolProvider <code>true</code> to run the tool in-process when possible
+     * @since 3.5.0
+     */
+    public void setUseToolProvider(boolean useToolProvider) {
+        this.useToolProvider = useToolProvider;
+    }
+
+    /**
+     * <p>
+     * Runs the tool in long-lived worker JVMs instead of forking a new JVM for each execution, disabled by default.
+     * Workers are started with the <code>java</code> executable of the toolchain if set, of the running JDK otherwise;
+     * they run the tool through its <code>java.util.spi.ToolProvider</code>, so the JDK must be Java 9 or later. The
+     * tool is forked as usual when it has no provider. Workers are shared by all the tool instances, per
+     * <code>java</code> executable and working directory.
+     * </p>
+     * <p>
+     * Workers are started on demand and never limit the number of concurrent executions; the pool size is the number
+     * of idle workers kept once the executions are over, and idle workers are stopped after a minute. A worker is
+     * recycled after a number of executions, see {@link #setWorkerMaxRuns(int)}, and killed when it fails or exceeds
+     * the timeout, see {@link #setTimeoutInSeconds(int)}. The same limitations as
+     * {@link #setUseToolProvider(boolean)} apply, except for the working directory: the tool is forked when given
+     * <code>-J</code> launcher options, environment variables added to the command line are ignored, the tool cannot
+     * read from stdin and {@link JavaToolResult#getExecutionResult()} is not available. When both are enabled,
+     * running the tool in-process takes precedence.
+     * </p>
+     *
+     * @param workerPoolSize the number of idle worker JVMs to keep, <code>0</code> to disable workers
+     * @since 3.5.0
+     */
+    public void setWorkerPoolSize(int workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    /**
+     * Sets the number of executions after which a worker JVM is stopped and replaced by a new one, to bound the
+     * effects of a tool leaking memory or state. Defaults to {@link #DEFAULT_WORKER_MAX_RUNS}.
+     *
+     * @param workerMaxRuns the number of executions, <code>0</code> for no limit
+     * @see #setWorkerPoolSize(int)
+     * @since 3.5.0
+     */
+    public void setWorkerMaxRuns(int workerMaxRuns) {
+        this.workerMaxRuns = workerMaxRuns;
+    }
+
+    /**
+     * Sets the time after which a forked tool, or the worker JVM running it, is killed and the execution fails with a
+     * {@link CommandLineTimeOutException}. Tools running in-process cannot be stopped and are not subject to it.
+     *
+     * @param timeoutInSeconds the timeout in seconds, <code>0</code> for no timeout (the default)
+     * @see #setWorkerPoolSize(int)
+     * @since 3.5.0
+     */
+    public void setTimeoutInSeconds(int timeoutInSeconds) {
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
     /**
      * {@inheritDoc}
      */
     public JavaToolResult execute(Request request) throws JavaToolException {
+        Commandline cli = null;
+        if ((useToolProvider && toolchain == null) || workerPoolSize > 0) {
+            // the location of the executable is not needed to run the tool without forking it
+            cli = createCommandLine(request, javaToolName);
+
+            JavaToolResult result = executeWithoutFork(cli, request);
+            if (result != null) {
+                return result;
+            }
+        }
 
         if (javaToolFile == null) {
 
@@ -110,8 +299,22 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
             }
         }
 
-        // creates the command line from the given request
-        Commandline cli = createCommandLine(request, javaToolFile);
+        if (cli != null) {
+            try {
+                cli.setExecutable(javaToolFile);
+            } catch (UnsupportedOperationException e) {
+                // immutable command line
+                cli = null;
+            }
+        }
+        if (cli == null) {
+            // creates the command line from the given request
+            cli = createCommandLine(request, javaToolFile);
+        }
+
+        if (argumentFileThreshold > 0) {
+            cli.setArgumentFileThreshold(argumentFileThreshold);
+        }
 
         // execute it
         JavaToolResult result = executeCommandLine(cli, request);
@@ -156,10 +359,14 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
 
         StreamConsumer systemErr = createSystemErrorStreamConsumer(request);
 
+        setCaptures(result, systemOut, systemErr);
+
         try {
-            int resultCode = CommandLineUtils.executeCommandLine(cli, systemIn, systemOut, systemErr);
+            CommandLineResult executionResult =
+                    CommandLineUtils.executeCommandLineForResult(cli, systemIn, systemOut, systemErr, timeoutInSeconds);
 
-            result.setExitCode(resultCode);
+            result.setExitCode(executionResult.getExitCode());
+            result.setExecutionResult(executionResult);
         } catch (CommandLineException e) {
             result.setExecutionException(e);
         }
@@ -167,6 +374,158 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
         return result;
     }
 
+    /**
+     * @param cli the command line
+     * @param request the request
+     * @return the result, <code>null</code> if the tool has to be forked
+     */
+    private JavaToolResult executeWithoutFork(Commandline cli, Request request) {
+        // options of the JVM running the tool are only understood by the launcher
+        for (String argument : cli.getArguments()) {
+            if (argument.startsWith("-J")) {
+                getLogger().debug("Launcher option " + argument + " given to " + javaToolName + ", forking it");
+                return null;
+            }
+        }
+
+        // the working directory of the running JVM cannot be changed
+        if (useToolProvider && toolchain == null && cli.getWorkingDirectory() == null) {
+            Object toolProvider = findToolProvider();
+            if (toolProvider != null) {
+                return executeToolProvider(toolProvider, cli, request);
+            }
+        }
+
+        if (workerPoolSize > 0) {
+            return executeInWorker(cli, request);
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs the tool in a worker JVM with the arguments of the command line.
+     *
+     * @param cli the command line
+     * @param request the request
+     * @return the result, <code>null</code> if the tool cannot run in a worker
+     */
+    private JavaToolResult executeInWorker(Commandline cli, Request request) {
+        if (javaExecutable == null) {
+            javaExecutable = resolveExecutable("java");
+        }
+        JavaToolWorkerPool pool = JavaToolWorkerPool.getPool(javaExecutable, cli.getWorkingDirectory());
+
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug("Executing in worker JVM: " + cli);
+        }
+
+        JavaToolResult result = createResult();
+
+        result.setCommandline(cli);
+
+        StreamConsumer systemOut = createSystemOutStreamConsumer(request);
+
+        StreamConsumer systemErr = createSystemErrorStreamConsumer(request);
+
+        setCaptures(result, systemOut, systemErr);
+
+        try {
+            Integer exitCode = pool.execute(
+                    javaToolName,
+                    cli.getArguments(),
+                    systemOut,
+                    systemErr,
+                    workerPoolSize,
+                    workerMaxRuns,
+                    timeoutInSeconds);
+            if (exitCode == null) {
+                getLogger().debug("No tool provider for " + javaToolName + " in worker JVM, forking it");
+                return null;
+            }
+
+            result.setExitCode(exitCode);
+        } catch (CommandLineTimeOutException e) {
+            result.setExecutionException(e);
+        } catch (IOException e) {
+            result.setExecutionException(
+                    new CommandLineException("Error while executing " + javaToolName + " in a worker JVM.", e));
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs the tool in-process with the arguments of the command line.
+     *
+     * @param toolProvider the <code>ToolProvider</code> of the tool
+     * @param cli the command line
+     * @param request the request
+     * @return the result
+     */
+    private JavaToolResult executeToolProvider(Object toolProvider, Commandline cli, Request request) {
+        if (getLogger().isDebugEnabled()) {
+            getLogger().debug("Executing in-process: " + cli);
+        }
+
+        JavaToolResult result = createResult();
+
+        result.setCommandline(cli);
+
+        StreamConsumer systemOut = createSystemOutStreamConsumer(request);
+
+        StreamConsumer systemErr = createSystemErrorStreamConsumer(request);
+
+        setCaptures(result, systemOut, systemErr);
+
+        try (PrintWriter out = new PrintWriter(new StreamConsumerWriter(systemOut));
+                PrintWriter err = new PrintWriter(new StreamConsumerWriter(systemErr))) {
+            Object exitCode = RUN_TOOL_PROVIDER.invoke(toolProvider, out, err, cli.getArguments());
+
+            result.setExitCode((Integer) exitCode);
+        } catch (InvocationTargetException e) {
+            result.setExecutionException(new CommandLineException(
+                    "Error while executing " + javaToolName + " in-process.", e.getTargetException()));
+        } catch (IllegalAccessException e) {
+            result.setExecutionException(
+                    new CommandLineException("Error while executing " + javaToolName + " in-process.", e));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the <code>ToolProvider</code> of the tool, <code>null</code> if none
+     */
+    private Object findToolProvider() {
+        if (FIND_FIRST_TOOL_PROVIDER == null) {
+            return null;
+        }
+        return TOOL_PROVIDERS
+                .computeIfAbsent(javaToolName, name -> {
+                    try {
+                        Optional<?> toolProvider = (Optional<?>) FIND_FIRST_TOOL_PROVIDER.invoke(null, name);
+                        return Optional.ofNullable(toolProvider.orElse(null));
+                    } catch (ReflectiveOperationException | RuntimeException e) {
+                        getLogger().debug("Cannot look up tool provider for " + name, e);
+                        return Optional.empty();
+                    }
+                })
+                .orElse(null);
+    }
+
+    /**
+     * Exposes the consumers capturing the output of the tool in the result.
+     */
+    private static void setCaptures(JavaToolResult result, StreamConsumer systemOut, StreamConsumer systemErr) {
+        if (systemOut instanceof CapturingStreamConsumer) {
+            result.setSystemOutCapture((CapturingStreamConsumer) systemOut);
+        }
+        if (systemErr instanceof CapturingStreamConsumer) {
+            result.setSystemErrorCapture((CapturingStreamConsumer) systemErr);
+        }
+    }
+
     /**
      * @param request the request
      * @return {@link StreamConsumer}
@@ -220,16 +579,53 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
     }
 
     /**
+     * Finds the java tool executable in the toolchain, the running JRE/JDK or the JDK pointed to by the
+     * <code>JDK_HOME</code> or <code>JAVA_HOME</code> environment variables. Without toolchain, the executables
+     * found are cached for the lifetime of the JVM, per tool and environment.
+     *
      * @return the location of the java tool executable
      */
     protected String findJavaToolExecutable() {
-        String executable = null;
+        return resolveExecutable(javaToolName);
+    }
+
+    /**
+     * @param toolName the name of the tool
+     * @return the location of the tool executable
+     */
+    private String resolveExecutable(String toolName) {
+        Map<String, String> env = System.getenv();
+
+        String command = toolName + (Os.isFamily(Os.FAMILY_WINDOWS) ? ".exe" : "");
 
         if (toolchain != null) {
-            executable = findToolchainExecutable();
+            String executable = lookupExecutable(toolName, command, env);
+            return executable != null ? executable : command;
         }
 
-        String command = javaToolName + (Os.isFamily(Os.FAMILY_WINDOWS) ? ".exe" : "");
+        String cacheKey = toolName + '\0' + System.getProperty("java.home") + '\0' + env.get("JDK_HOME") + '\0'
+                + env.get("JAVA_HOME");
+        String executable = EXECUTABLES.get(cacheKey);
+        if (executable == null) {
+            executable = lookupExecutable(toolName, command, env);
+            if (executable == null) {
+                // not cached, the executable may show up later
+                return command;
+            }
+            EXECUTABLES.put(cacheKey, executable);
+        }
+        return executable;
+    }
+
+    /**
+     * @return the location of the tool executable, <code>null</code> if not found
+     */
+    private String lookupExecutable(String toolName, String command, Map<String, String> env) {
+        String executable = null;
+
+        if (toolchain != null) {
+            executable = findToolchainExecutable(toolName);
+        }
 
         if (executable == null) {
             executable = findExecutable(command, System.getProperty("java.home"), "../bin", "bin", "../sh");
@@ -237,8 +633,6 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
 
         if (executable == null) {
 
-            Map<String, String> env = System.getenv();
-
             String[] variables = {"JDK_HOME", "JAVA_HOME"};
 
             for (String variable : variables) {
@@ -249,24 +643,23 @@ public abstract class AbstractJavaTool<Request extends JavaToolRequest> implemen
             }
         }
 
-        if (executable == null) {
-            executable = command;
-        }
-
         return executable;
     }
 
     /**
-     * Run toolchain.findTool( javaToolName ); through reflection to avoid compile dependency on
+     * Run toolchain.findTool( toolName ); through reflection to avoid compile dependency on
      * Maven core.
      */
-    private String findToolchainExecutable() {
-        try {
-            Method m = toolchain.getClass().getMethod("findTool", String.class);
-            return (String) m.invoke(toolchain, javaToolName);
-        } catch (NoSuchMethodException e) {
+    private String findToolchainExecutable(String toolName) {
+        Optional<Method> m = FIND_TOOL_METHODS.get(toolchain.getClass());
+        if (!m.isPresent()) {
             // should not happen if toolchain is really a Toolchain object
-            getLogger().warn("unexpected NoSuchMethodException", e);
+            getLogger().warn("unexpected NoSuchMethodException: no findTool(String) method in "
+                    + toolchain.getClass().getName());
+            return null;
+        }
+        try {
+            return (String) m.get().invoke(toolchain, toolName);
         } catch (SecurityException e) {
             // should not happen
             getLogger().warn("unexpected SecurityException", e);
@@ -18,7 +18,9 @@
  */
 package org.apache.maven.shared.utils.cli.javatool;
 
+import org.apache.maven.shared.utils.cli.CapturingStreamConsumer;
 import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.apache.maven.shared.utils.cli.CommandLineResult;
 import org.apache.maven.shared.utils.cli.Commandline;
 
 /**
@@ -44,6 +46,21 @@ public class JavaToolResult {
      */
     private Commandline commandline;
 
+    /**
+     * The timing and stream statistics of the tool invocation.
+     */
+    private CommandLineResult executionResult;
+
+    /**
+     * The consumer of stdout if it captured the output.
+     */
+    private CapturingStreamConsumer systemOutCapture;
+
+    /**
+     * The consumer of stderr if it captured the output.
+     */
+    private CapturingStreamConsumer systemErrorCapture;
+
     /**
      * Gets the exit code from the tool invocation. A non-zero value indicates a build failure. <strong>Note:</strong>
      * This value is undefined if {@link #getExecutionException()} reports an exception.
@@ -99,4 +116,68 @@ public class JavaToolResult {
     public void setCommandline(Commandline commandline) {
         this.commandline = commandline;
     }
+
+    /**
+     * Gets the timing and stream statistics of the tool invocation.
+     *
+     * @return the statistics, <code>null</code> if the tool could not be executed
+     * @since 3.5.0
+     */
+    public CommandLineResult getExecutionResult() {
+        return executionResult;
+    }
+
+    /**
+     * Sets the timing and stream statistics of the tool invocation.
+     *
+     * @param executionResult the statistics of the tool invocation
+     * @since 3.5.0
+     */
+    public void setExecutionResult(CommandLineResult executionResult) {
+        this.executionResult = executionResult;
+    }
+
+    /**
+     * Gets the output captured from stdout, when the request used a {@link CapturingStreamConsumer}. The output is
+     * only built when queried from the capture.
+     *
+     * @return the capture of stdout, <code>null</code> if the output was not captured
+     * @see JavaToolRequest#setSystemOutStreamConsumer(org.apache.maven.shared.utils.cli.StreamConsumer)
+     * @since 3.5.0
+     */
+    public CapturingStreamConsumer getSystemOutCapture() {
+        return systemOutCapture;
+    }
+
+    /**
+     * Sets the output captured from stdout.
+     *
+     * @param systemOutCapture the capture of stdout, may be <code>null</code>
+     * @since 3.5.0
+     */
+    public void setSystemOutCapture(CapturingStreamConsumer systemOutCapture) {
+        this.systemOutCapture = systemOutCapture;
+    }
+
+    /**
+     * Gets the output captured from stderr, when the request used a {@link CapturingStreamConsumer}. The output is
+     * only built when queried from the capture.
+     *
+     * @return the capture of stderr, <code>null</code> if the output was not captured
+     * @see JavaToolRequest#setSystemErrorStreamConsumer(org.apache.maven.shared.utils.cli.StreamConsumer)
+     * @since 3.5.0
+     */
+    public CapturingStreamConsumer getSystemErrorCapture() {
+        return systemErrorCapture;
+    }
+
+    /**
+     * Sets the output captured from stderr.
+     *
+     * @param systemErrorCapture the capture of stderr, may be <code>null</code>
+     * @since 3.5.0
+     */
+    public void setSystemErrorCapture(CapturingStreamConsumer systemErrorCapture) {
+        this.systemErrorCapture = systemErrorCapture;
+    }
 }
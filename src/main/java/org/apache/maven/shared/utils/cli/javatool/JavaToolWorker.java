@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli.javatool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>
+ * Main class of the long-lived worker JVMs used by {@link AbstractJavaTool#setWorkerPoolSize(int)}. A worker runs the
+ * requested tools one after the other through their <code>java.util.spi.ToolProvider</code>, and exits once its
+ * stdin is closed. It only depends on the JDK, so that it runs from the maven-shared-utils jar alone.
+ * </p>
+ * <p>
+ * The protocol is made of frames written with {@link DataOutputStream}, strings being encoded as their UTF-8 length
+ * followed by their UTF-8 bytes. A request is the number of strings followed by the tool name and its arguments. The
+ * reply is a sequence of {@link #STDOUT} and {@link #STDERR} frames carrying a line of output, ended by either an
+ * {@link #EXIT} frame carrying the exit code or an {@link #UNSUPPORTED} frame if the tool has no provider.
+ * </p>
+ * <p>
+ * It is an implementation detail of {@link JavaToolWorkerPool}, the protocol may change between versions.
+ * </p>
+ */
+final class JavaToolWorker {
+
+    /**
+     * Frame carrying a line written to stdout by the tool.
+     */
+    static final int STDOUT = 1;
+
+    /**
+     * Frame carrying a line written to stderr by the tool.
+     */
+    static final int STDERR = 2;
+
+    /**
+     * Frame carrying the exit code of the tool, ends a reply.
+     */
+    static final int EXIT = 3;
+
+    /**
+     * Frame telling the tool has no provider in the worker JVM, ends a reply.
+     */
+    static final int UNSUPPORTED = 4;
+
+    private final DataInputStream in;
+
+    private final DataOutputStream out;
+
+    private final LineOutputStream systemOut = new LineOutputStream(STDOUT);
+
+    private final LineOutputStream systemErr = new LineOutputStream(STDERR);
+
+    private final Map<String, Optional<Object>> toolProviders = new HashMap<>();
+
+    private final Method findFirst;
+
+    private final Method run;
+
+    private JavaToolWorker(DataInputStream in, DataOutputStream out) {
+        this.in = in;
+        this.out = out;
+
+        Method findFirstMethod = null;
+        Method runMethod = null;
+        try {
+            Class<?> toolProvider = Class.forName("java.util.spi.ToolProvider");
+            findFirstMethod = toolProvider.getMethod("findFirst", String.class);
+            runMethod = toolProvider.getMethod("run", PrintWriter.class, PrintWriter.class, String[].class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Java 8: no tool is supported
+            findFirstMethod = null;
+        }
+        this.findFirst = findFirstMethod;
+        this.run = runMethod;
+    }
+
+    /**
+     * @param args not used
+     * @throws IOException if the communication with the parent JVM failed
+     */
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+
+        JavaToolWorker worker = new JavaToolWorker(in, out);
+
+        // stdout is the protocol channel from now on, stray output of the tools becomes part of the reply
+        System.setOut(new PrintStream(worker.systemOut, true));
+        System.setErr(new PrintStream(worker.systemErr, true));
+
+        while (worker.serve()) {
+            // next request
+        }
+    }
+
+    /**
+     * Serves a request.
+     *
+     * @return <code>false</code> once the parent JVM closed stdin
+     * @throws IOException if the communication with the parent JVM failed
+     */
+    private boolean serve() throws IOException {
+        String[] request;
+        try {
+            request = new String[in.readInt()];
+        } catch (EOFException e) {
+            return false;
+        }
+        for (int i = 0; i < request.length; i++) {
+            request[i] = readString(in);
+        }
+
+        String toolName = request[0];
+        String[] toolArgs = new String[request.length - 1];
+        System.arraycopy(request, 1, toolArgs, 0, toolArgs.length);
+
+        Object toolProvider = findToolProvider(toolName);
+        if (toolProvider == null) {
+            synchronized (out) {
+                out.writeByte(UNSUPPORTED);
+                out.flush();
+            }
+            return true;
+        }
+
+        Charset charset = Charset.defaultCharset();
+        LineOutputStream stdout = new LineOutputStream(STDOUT);
+        LineOutputStream stderr = new LineOutputStream(STDERR);
+        int exitCode;
+        try (PrintWriter toolOut = new PrintWriter(new OutputStreamWriter(stdout, charset));
+                PrintWriter toolErr = new PrintWriter(new OutputStreamWriter(stderr, charset))) {
+            try {
+                exitCode = (Integer) run.invoke(toolProvider, toolOut, toolErr, toolArgs);
+            } catch (InvocationTargetException e) {
+                // behave like an uncaught exception in the main method of a forked tool
+                e.getTargetException().printStackTrace(toolErr);
+                exitCode = 1;
+            } catch (IllegalAccessException e) {
+                e.printStackTrace(toolErr);
+                exitCode = 1;
+            }
+        }
+        systemOut.close();
+        systemErr.close();
+
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+        return true;
+    }
+
+    private Object findToolProvider(String toolName) {
+        if (findFirst == null) {
+            return null;
+        }
+        return toolProviders
+                .computeIfAbsent(toolName, name -> {
+                    try {
+                        Optional<?> toolProvider = (Optional<?>) findFirst.invoke(null, name);
+                        return Optional.ofNullable(toolProvider.orElse(null));
+                    } catch (ReflectiveOperationException | RuntimeException e) {
+                        return Optional.empty();
+                    }
+                })
+                .orElse(null);
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param s the string to write
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param in the stream to read from
+     * @return the string read
+     * @throws IOException if an I/O error occurs
+     */
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Splits the bytes written into lines, each one sent to the parent JVM in a frame.
+     */
+    private class LineOutputStream extends OutputStream {
+
+        private final int frame;
+
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(80);
+
+        LineOutputStream(int frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                sendLine();
+            } else {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n') {
+                    line.write(b, start, i - start);
+                    sendLine();
+                    start = i + 1;
+                }
+            }
+            line.write(b, start, end - start);
+        }
+
+        /**
+         * Sends the pending incomplete line, if any. The stream remains usable.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (line.size() > 0) {
+                sendLine();
+            }
+        }
+
+        private void sendLine() throws IOException {
+            int length = line.size();
+            byte[] bytes = line.toByteArray();
+            if (length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            line.reset();
+
+            synchronized (out) {
+                out.writeByte(frame);
+                writeString(out, new String(bytes, 0, length, Charset.defaultCharset()));
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli.javatool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.shared.utils.cli.CommandLineTimeOutException;
+import org.apache.maven.shared.utils.cli.StreamConsumer;
+
+/**
+ * The idle {@link JavaToolWorker} JVMs started with the same java executable in the same working directory. Workers
+ * are started on demand, so that concurrent executions never wait for each other; once released, up to a maximum
+ * number of them is kept for the next executions, the others are stopped. Idle workers are stopped after
+ * {@link #IDLE_TIMEOUT_MS}, and a pool left without workers is discarded, so that pools do not pile up for each
+ * working directory. Worker JVMs exit when the JVM owning them does, as their stdin gets closed.
+ */
+final class JavaToolWorkerPool {
+
+    /**
+     * The time in milliseconds after which an idle worker is stopped.
+     */
+    static final long IDLE_TIMEOUT_MS = 60000;
+
+    private static final Map<String, JavaToolWorkerPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * Stops the idle workers and the workers exceeding their timeout.
+     */
+    private static final ScheduledExecutorService SCHEDULER = newScheduler();
+
+    private final String key;
+
+    private final String javaExecutable;
+
+    private final File workingDirectory;
+
+    private final Deque<Worker> idleWorkers = new ArrayDeque<>();
+
+    /**
+     * The number of workers executing a tool.
+     */
+    private int activeWorkers;
+
+    /**
+     * Set once the pool was discarded: the workers released to it are stopped.
+     */
+    private boolean discarded;
+
+    /**
+     * The tools known to have no provider in the worker JVMs.
+     */
+    private final Set<String> unsupportedTools = ConcurrentHashMap.newKeySet();
+
+    private JavaToolWorkerPool(String key, String javaExecutable, File workingDirectory) {
+        this.key = key;
+        this.javaExecutable = javaExecutable;
+        this.workingDirectory = workingDirectory;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "JavaToolWorkerPool-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.scheduleWithFixedDelay(
+                JavaToolWorkerPool::evictIdleWorkers, IDLE_TIMEOUT_MS / 4, IDLE_TIMEOUT_MS / 4, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    /**
+     * @param javaExecutable the java executable to start the workers with
+     * @param workingDirectory the working directory of the workers, <code>null</code> for the current one
+     * @return the pool of workers
+     */
+    static JavaToolWorkerPool getPool(String javaExecutable, File workingDirectory) {
+        String key = javaExecutable + File.pathSeparator
+                + (workingDirectory == null ? "" : workingDirectory.getAbsolutePath());
+        return POOLS.computeIfAbsent(key, k -> new JavaToolWorkerPool(k, javaExecutable, workingDirectory));
+    }
+
+    /**
+     * Runs a tool in a worker.
+     *
+     * @param toolName the name of the tool
+     * @param args the arguments of the tool
+     * @param systemOut the consumer of the lines written to stdout by the tool
+     * @param systemErr the consumer of the lines written to stderr by the tool
+     * @param maxIdleWorkers the number of idle workers to keep
+     * @param maxRuns the number of executions after which a worker is stopped, <code>0</code> for no limit
+     * @param timeoutInSeconds the time after which the worker is killed, zero or negative for no timeout
+     * @return the exit code of the tool, <code>null</code> if the tool cannot run in a worker
+     * @throws IOException if the worker could not be started or failed
+     * @throws CommandLineTimeOutException if the tool did not complete within the timeout
+     */
+    Integer execute(
+            String toolName,
+            String[] args,
+            StreamConsumer systemOut,
+            StreamConsumer systemErr,
+            int maxIdleWorkers,
+            int maxRuns,
+            int timeoutInSeconds)
+            throws IOException, CommandLineTimeOutException {
+        if (unsupportedTools.contains(toolName)) {
+            return null;
+        }
+
+        Worker worker = acquire();
+        Integer exitCode;
+        ScheduledFuture<?> timeout = null;
+        try {
+            if (timeoutInSeconds > 0) {
+                timeout = SCHEDULER.schedule(worker::kill, timeoutInSeconds, TimeUnit.SECONDS);
+            }
+            exitCode = worker.execute(toolName, args, systemOut, systemErr);
+        } catch (IOException | RuntimeException e) {
+            discard(worker);
+            if (worker.killed) {
+                throw new CommandLineTimeOutException(
+                        String.format("Worker JVM timed out after %d seconds.", timeoutInSeconds), e);
+            }
+            throw e;
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        if (worker.killed) {
+            // the reply was complete, but the worker is being killed
+            discard(worker);
+        } else {
+            if (exitCode == null) {
+                unsupportedTools.add(toolName);
+            }
+            release(worker, maxIdleWorkers, maxRuns);
+        }
+        return exitCode;
+    }
+
+    /**
+     * @return the number of idle workers
+     */
+    synchronized int getIdleWorkerCount() {
+        return idleWorkers.size();
+    }
+
+    /**
+     * @return the number of pools, which have workers
+     */
+    static int getPoolCount() {
+        return POOLS.size();
+    }
+
+    private Worker acquire() throws IOException {
+        synchronized (this) {
+            activeWorkers++;
+            Worker worker;
+            while ((worker = idleWorkers.pollFirst()) != null) {
+                if (worker.process.isAlive()) {
+                    return worker;
+                }
+                worker.destroy();
+            }
+        }
+        try {
+            return new Worker(startWorker());
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                activeWorkers--;
+            }
+            throw e;
+        }
+    }
+
+    private void release(Worker worker, int maxIdleWorkers, int maxRuns) {
+        synchronized (this) {
+            activeWorkers--;
+            if (!discarded && (maxRuns <= 0 || worker.runs < maxRuns) && idleWorkers.size() < maxIdleWorkers) {
+                // most recently used first, the others get stopped when the pool shrinks
+                worker.idleSinceNanos = System.nanoTime();
+                idleWorkers.addFirst(worker);
+                return;
+            }
+        }
+        worker.destroy();
+    }
+
+    private void discard(Worker worker) {
+        synchronized (this) {
+            activeWorkers--;
+        }
+        worker.kill();
+    }
+
+    /**
+     * Stops the workers idle for longer than {@link #IDLE_TIMEOUT_MS} in all the pools, and discards the pools left
+     * without workers.
+     */
+    static void evictIdleWorkers() {
+        evictIdleWorkers(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS));
+    }
+
+    /**
+     * @param idleTimeoutNanos the time after which an idle worker is stopped
+     */
+    static void evictIdleWorkers(long idleTimeoutNanos) {
+        long now = System.nanoTime();
+        for (JavaToolWorkerPool pool : POOLS.values()) {
+            synchronized (pool) {
+                // least recently used last
+                for (Iterator<Worker> it = pool.idleWorkers.descendingIterator(); it.hasNext(); ) {
+                    Worker worker = it.next();
+                    if (now - worker.idleSinceNanos < idleTimeoutNanos) {
+                        break;
+                    }
+                    it.remove();
+                    worker.destroy();
+                }
+                if (pool.idleWorkers.isEmpty() && pool.activeWorkers == 0) {
+                    pool.discarded = true;
+                    POOLS.remove(pool.key, pool);
+                }
+            }
+        }
+    }
+
+    private Process startWorker() throws IOException {
+        String classpath;
+        try {
+            classpath = new File(JavaToolWorker.class
+                            .getProtectionDomain()
+                            .getCodeSource()
+                            .getLocation()
+                            .toURI())
+                    .getPath();
+        } catch (URISyntaxException | RuntimeException e) {
+            throw new IOException("Cannot locate the classpath of " + JavaToolWorker.class.getName(), e);
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(
+                javaExecutable, "-cp", classpath, JavaToolWorker.class.getName());
+        builder.directory(workingDirectory);
+        // only messages of the JVM itself, output of the tools is part of the protocol
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    /**
+     * A worker JVM.
+     */
+    private static final class Worker {
+
+        private final Process process;
+
+        private final DataOutputStream out;
+
+        private final DataInputStream in;
+
+        private int runs;
+
+        private long idleSinceNanos;
+
+        private volatile boolean killed;
+
+        Worker(Process process) {
+            this.process = process;
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        Integer execute(String toolName, String[] args, StreamConsumer systemOut, StreamConsumer systemErr)
+                throws IOException {
+            runs++;
+
+            out.writeInt(args.length + 1);
+            JavaToolWorker.writeString(out, toolName);
+            for (String arg : args) {
+                JavaToolWorker.writeString(out, arg);
+            }
+            out.flush();
+
+            while (true) {
+                int frame = in.readUnsignedByte();
+                switch (frame) {
+                    case JavaToolWorker.STDOUT:
+                        consumeLine(systemOut, JavaToolWorker.readString(in));
+                        break;
+                    case JavaToolWorker.STDERR:
+                        consumeLine(systemErr, JavaToolWorker.readString(in));
+                        break;
+                    case JavaToolWorker.EXIT:
+                        return in.readInt();
+                    case JavaToolWorker.UNSUPPORTED:
+                        return null;
+                    default:
+                        throw new IOException("Unexpected frame " + frame + " from worker JVM.");
+                }
+            }
+        }
+
+        private static void consumeLine(StreamConsumer consumer, String line) throws IOException {
+            if (consumer != null) {
+                consumer.consumeLine(line);
+            }
+        }
+
+        /**
+         * Kills the worker, which makes a pending read of its reply fail.
+         */
+        void kill() {
+            killed = true;
+            process.destroyForcibly();
+        }
+
+        void destroy() {
+            process.destroy();
+        }
+    }
+}
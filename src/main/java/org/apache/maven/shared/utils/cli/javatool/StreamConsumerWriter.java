@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli.javatool;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.maven.shared.utils.cli.StreamConsumer;
+
+/**
+ * A {@link Writer} splitting the written characters into lines passed to a {@link StreamConsumer}, the way a
+ * {@link org.apache.maven.shared.utils.cli.StreamPumper} does for the output of a forked process. Lines are terminated
+ * by <code>\n</code>, <code>\r</code> or <code>\r\n</code>; a pending incomplete line is passed on {@link #close()}.
+ */
+class StreamConsumerWriter extends Writer {
+
+    private final StreamConsumer consumer;
+
+    private final StringBuilder line = new StringBuilder(80);
+
+    private boolean lastWasCarriageReturn;
+
+    /**
+     * @param consumer the consumer of the lines
+     */
+    StreamConsumerWriter(StreamConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                char c = cbuf[i];
+                if (c == '\n') {
+                    if (!lastWasCarriageReturn) {
+                        consumeLine();
+                    }
+                    lastWasCarriageReturn = false;
+                } else if (c == '\r') {
+                    consumeLine();
+                    lastWasCarriageReturn = true;
+                } else {
+                    line.append(c);
+                    lastWasCarriageReturn = false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // lines are passed as soon as they are complete
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (line.length() > 0) {
+                consumeLine();
+            }
+        }
+    }
+
+    private void consumeLine() throws IOException {
+        String s = line.toString();
+        line.setLength(0);
+        consumer.consumeLine(s);
+    }
+}
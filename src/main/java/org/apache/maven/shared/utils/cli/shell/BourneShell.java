@@ -28,6 +28,25 @@ import org.apache.maven.shared.utils.Os;
  */
 public class BourneShell extends Shell {
 
+    /**
+     * Whether a subclass overrides {@link #quoteOneItem(String, boolean)}, which the command line must then go
+     * through as it did before {@link #appendQuotedItem(StringBuilder, String, boolean)} existed.
+     */
+    private static final ClassValue<Boolean> QUOTE_ONE_ITEM_OVERRIDDEN = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> c = type; c != BourneShell.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("quoteOneItem", String.class, boolean.class);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // not overridden at this level
+                }
+            }
+            return false;
+        }
+    };
+
     /**
      * Create instance of BourneShell.
      */
@@ -122,6 +141,32 @@ public class BourneShell extends Shell {
             return null;
         }
 
-        return "'" + path.replace("'", "'\"'\"'") + "'";
+        StringBuilder sb = new StringBuilder(path.length() + 2);
+        appendQuoted(sb, path);
+        return sb.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void appendQuotedItem(StringBuilder sb, String item, boolean isExecutable) {
+        if (QUOTE_ONE_ITEM_OVERRIDDEN.get(getClass())) {
+            sb.append(quoteOneItem(item, isExecutable));
+        } else if (item == null) {
+            sb.append((String) null);
+        } else {
+            appendQuoted(sb, item);
+        }
+    }
+
+    private static void appendQuoted(StringBuilder sb, String item) {
+        sb.append('\'');
+        int start = 0;
+        for (int i = item.indexOf('\''); i >= 0; i = item.indexOf('\'', start)) {
+            sb.append(item, start, i).append("'\"'\"'");
+            start = i + 1;
+        }
+        sb.append(item, start, item.length()).append('\'');
     }
 }
@@ -78,9 +78,9 @@ public class CmdShell extends Shell {
      */
     @Override
     public List<String> getCommandLine(String executable, String... arguments) {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(getRawCommandLineCapacity(executable, arguments) + 2);
         sb.append('"');
-        sb.append(super.getCommandLine(executable, arguments).get(0));
+        appendRawCommandLine(sb, executable, arguments);
         sb.append('"');
 
         return Arrays.asList(sb.toString());
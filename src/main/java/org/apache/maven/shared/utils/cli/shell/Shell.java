@@ -97,6 +97,20 @@ public class Shell {
         return inputString;
     }
 
+    /**
+     * Appends an item quoted the way {@link #quoteOneItem(String, boolean)} does. Used to build the command line in a
+     * single pass, without intermediate strings: subclasses overriding {@link #quoteOneItem(String, boolean)} should
+     * override this method accordingly.
+     *
+     * @param sb the builder to append to
+     * @param item the item to quote
+     * @param isExecutable <code>true</code> if the item is the executable
+     * @since 3.5.0
+     */
+    protected void appendQuotedItem(StringBuilder sb, String item, boolean isExecutable) {
+        sb.append(quoteOneItem(item, isExecutable));
+    }
+
     /**
      * Get the command line for the provided executable and arguments in this shell.
      *
@@ -114,8 +128,25 @@ public class Shell {
      * @return the list on command line
      */
     List<String> getRawCommandLine(String executableParameter, String... argumentsParameter) {
-        List<String> commandLine = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
+        List<String> commandLine = new ArrayList<>(1);
+        StringBuilder sb = new StringBuilder(getRawCommandLineCapacity(executableParameter, argumentsParameter));
+
+        appendRawCommandLine(sb, executableParameter, argumentsParameter);
+
+        commandLine.add(sb.toString());
+
+        return commandLine;
+    }
+
+    /**
+     * Appends the executable and its arguments, quoted as needed.
+     *
+     * @param sb the builder to append to
+     * @param executableParameter executable
+     * @param argumentsParameter the arguments for the executable
+     */
+    void appendRawCommandLine(StringBuilder sb, String executableParameter, String... argumentsParameter) {
+        int start = sb.length();
 
         if (executableParameter != null) {
             String preamble = getExecutionPreamble();
@@ -123,23 +154,38 @@ public class Shell {
                 sb.append(preamble);
             }
 
-            sb.append(quoteOneItem(executableParameter, true));
+            appendQuotedItem(sb, executableParameter, true);
         }
         for (String argument : argumentsParameter) {
-            if (sb.length() > 0) {
+            if (sb.length() > start) {
                 sb.append(' ');
             }
 
             if (quotedArgumentsEnabled) {
-                sb.append(quoteOneItem(argument, false));
+                appendQuotedItem(sb, argument, false);
             } else {
                 sb.append(argument);
             }
         }
+    }
 
-        commandLine.add(sb.toString());
-
-        return commandLine;
+    /**
+     * @param executableParameter executable
+     * @param argumentsParameter the arguments for the executable
+     * @return the expected length of the raw command line, assuming every item gets quoted
+     */
+    int getRawCommandLineCapacity(String executableParameter, String... argumentsParameter) {
+        // room for a preamble, quotes and separators
+        int capacity = 64 + 3 * argumentsParameter.length;
+        if (executableParameter != null) {
+            capacity += executableParameter.length();
+        }
+        for (String argument : argumentsParameter) {
+            if (argument != null) {
+                capacity += argument.length();
+            }
+        }
+        return capacity;
     }
 
     char[] getQuotingTriggerChars() {
@@ -219,6 +265,16 @@ public class Shell {
         return executable;
     }
 
+    /**
+     * Gets the executable as set, without any quoting a subclass may apply in {@link #getExecutable()}.
+     *
+     * @return the executable
+     * @since 3.5.0
+     */
+    public String getOriginalExecutable() {
+        return executable;
+    }
+
     /**
      * Sets execution directory.
      *
@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.xml;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * XMLWriter with the same output as {@link PrettyPrintXMLWriter}, meant for large documents. The output is buffered
+ * without any locking and handed over to the target in large chunks, either a {@link Writer} or an
+ * {@link OutputStream} the characters are encoded to as UTF-8 directly. The indentation of each depth is computed
+ * once.
+ * </p>
+ * <p>
+ * Unlike {@link PrettyPrintXMLWriter}, failures of the target are not swallowed: they are thrown by the method
+ * whose output filled the buffer, or at the latest by {@link #flush()} or {@link #close()}. Nothing reaches the
+ * target before the buffer is full or flushed, so the writer must be flushed or closed once done.
+ * </p>
+ *
+ * @since 3.5.0
+ * @deprecated use org.w3c.dom, JDOM, XOM, or SAX
+ */
+@Deprecated
+public class BufferedXMLWriter implements XMLWriter, Flushable, Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String DEFAULT_LINE_INDENT = "  ";
+
+    private static final String DEFAULT_LINE_SEPARATOR = "\n";
+
+    /**
+     * The deepest indentation cached, deeper lines append the missing levels one by one.
+     */
+    private static final int MAX_CACHED_DEPTH = 64;
+
+    private final Output out;
+
+    private String[] elementStack = new String[16];
+
+    /**
+     * The line separator followed by the indentation of each depth up to {@link #MAX_CACHED_DEPTH}, computed on
+     * demand.
+     */
+    private final String[] newLines = new String[MAX_CACHED_DEPTH + 1];
+
+    private boolean processingElement = false;
+
+    private boolean documentStarted = false;
+
+    private boolean endOnSameLine = false;
+
+    private int depth = 0;
+
+    private String lineIndent = DEFAULT_LINE_INDENT;
+
+    private String lineSeparator = DEFAULT_LINE_SEPARATOR;
+
+    private String encoding;
+
+    private String docType;
+
+    /**
+     * @param writer the target, not null
+     */
+    public BufferedXMLWriter(Writer writer) {
+        this.out = new Output(writer, null);
+    }
+
+    /**
+     * @param stream the target the document is written to in UTF-8, not null
+     */
+    public BufferedXMLWriter(OutputStream stream) {
+        this.out = new Output(null, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if writing to an {@link OutputStream} in another encoding than UTF-8
+     */
+    @Override
+    public void setEncoding(String encoding) {
+        if (documentStarted) {
+            throw new IllegalStateException("Document headers already written!");
+        }
+        if (out.stream != null && encoding != null && !StandardCharsets.UTF_8.equals(Charset.forName(encoding))) {
+            throw new IllegalArgumentException("Only UTF-8 is supported when writing to an OutputStream: " + encoding);
+        }
+
+        this.encoding = encoding;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDocType(String docType) {
+        if (documentStarted) {
+            throw new IllegalStateException("Document headers already written!");
+        }
+
+        this.docType = docType;
+    }
+
+    /**
+     * @param lineSeparator the line separator to be output
+     */
+    public void setLineSeparator(String lineSeparator) {
+        if (documentStarted) {
+            throw new IllegalStateException("Document headers already written!");
+        }
+
+        this.lineSeparator = lineSeparator;
+        Arrays.fill(newLines, null);
+    }
+
+    /**
+     * @param lineIndentParameter the line indent parameter
+     */
+    public void setLineIndenter(String lineIndentParameter) {
+        if (documentStarted) {
+            throw new IllegalStateException("Document headers already written!");
+        }
+
+        this.lineIndent = lineIndentParameter;
+        Arrays.fill(newLines, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startElement(String elementName) throws IOException {
+        if (elementName.isEmpty()) {
+            throw new IllegalArgumentException("Element name cannot be empty");
+        }
+
+        boolean firstLine = ensureDocumentStarted();
+
+        completePreviouslyOpenedElement();
+
+        if (!firstLine) {
+            newLine();
+        }
+
+        out.write('<');
+        out.write(elementName);
+
+        processingElement = true;
+
+        if (depth == elementStack.length) {
+            elementStack = Arrays.copyOf(elementStack, depth * 2);
+        }
+        elementStack[depth++] = elementName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAttribute(String key, String value) throws IOException {
+        if (!processingElement) {
+            throw new IllegalStateException("currently processing no element");
+        }
+
+        out.write(' ');
+        out.write(key);
+        out.write('=');
+        XMLEncode.xmlEncodeTextAsPCDATA(value, true, '"', out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeText(String text) throws IOException {
+        ensureDocumentStarted();
+
+        completePreviouslyOpenedElement();
+
+        XMLEncode.xmlEncodeText(text, out);
+
+        endOnSameLine = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeMarkup(String markup) throws IOException {
+        ensureDocumentStarted();
+
+        completePreviouslyOpenedElement();
+
+        out.write(markup);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endElement() throws IOException {
+        String elementName = elementStack[--depth];
+        elementStack[depth] = null;
+        if (processingElement) {
+            // this means we don't have any content yet so we just add a />
+            out.write("/>");
+
+            processingElement = false;
+        } else {
+            if (!endOnSameLine) {
+                newLine();
+            }
+
+            // otherwise we need a full closing tag for that element
+            out.write("</");
+            out.write(elementName);
+            out.write('>');
+        }
+
+        endOnSameLine = false;
+    }
+
+    /**
+     * Writes the buffered output to the target and flushes it.
+     *
+     * @throws IOException if writing to the target fails
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes the buffered output to the target and closes it.
+     *
+     * @throws IOException if writing to or closing the target fails
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Write the document if not already done.
+     *
+     * @return <code>true</code> if the document headers have freshly been written
+     */
+    private boolean ensureDocumentStarted() throws IOException {
+        if (!documentStarted) {
+            if (docType != null || encoding != null) {
+                writeDocumentHeader();
+            }
+
+            documentStarted = true;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private void writeDocumentHeader() throws IOException {
+        out.write("<?xml version=\"1.0\"");
+
+        if (encoding != null) {
+            out.write(" encoding=\"");
+            out.write(encoding);
+            out.write('\"');
+        }
+
+        out.write("?>");
+
+        newLine();
+
+        if (docType != null) {
+            out.write("<!DOCTYPE ");
+            out.write(docType);
+            out.write('>');
+            newLine();
+        }
+    }
+
+    private void newLine() throws IOException {
+        int cachedDepth = Math.min(depth, MAX_CACHED_DEPTH);
+        out.write(newLine(cachedDepth));
+        if (!lineIndent.isEmpty()) {
+            for (int i = cachedDepth; i < depth; i++) {
+                out.write(lineIndent);
+            }
+        }
+    }
+
+    /**
+     * @return the line separator followed by the indentation of the depth, each one built from the previous one
+     */
+    private String newLine(int cachedDepth) {
+        String newLine = newLines[cachedDepth];
+        if (newLine == null) {
+            newLine = cachedDepth == 0 ? lineSeparator : newLine(cachedDepth - 1) + lineIndent;
+            newLines[cachedDepth] = newLine;
+        }
+        return newLine;
+    }
+
+    private void completePreviouslyOpenedElement() throws IOException {
+        if (processingElement) {
+            out.write('>');
+            processingElement = false;
+        }
+    }
+
+    /**
+     * The unsynchronized buffer in front of the target, also handed to {@link XMLEncode}.
+     */
+    private static final class Output extends Writer {
+
+        private final Writer writer;
+
+        private final OutputStream stream;
+
+        private final char[] chars = new char[BUFFER_SIZE];
+
+        private int count;
+
+        private byte[] bytes;
+
+        Output(Writer writer, OutputStream stream) {
+            this.writer = writer;
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (count == chars.length) {
+                flushBuffer(false);
+            }
+            chars[count++] = (char) c;
+        }
+
+        @Override
+        public void write(String str) throws IOException {
+            write(str, 0, str.length());
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == chars.length) {
+                    flushBuffer(false);
+                }
+                int chunk = Math.min(len, chars.length - count);
+                str.getChars(off, off + chunk, chars, count);
+                count += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == chars.length) {
+                    flushBuffer(false);
+                }
+                int chunk = Math.min(len, chars.length - count);
+                System.arraycopy(cbuf, off, chars, count, chunk);
+                count += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer(false);
+            if (writer != null) {
+                writer.flush();
+            } else {
+                stream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBuffer(true);
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                } else {
+                    stream.close();
+                }
+            }
+        }
+
+        /**
+         * @param end <code>true</code> if no more output follows, <code>false</code> to keep a trailing high
+         *            surrogate in the buffer until its low surrogate was written
+         */
+        private void flushBuffer(boolean end) throws IOException {
+            if (writer != null) {
+                writer.write(chars, 0, count);
+                count = 0;
+            } else {
+                int length = count;
+                if (!end && length > 0 && Character.isHighSurrogate(chars[length - 1])) {
+                    length--;
+                }
+                if (bytes == null) {
+                    bytes = new byte[chars.length * 3];
+                }
+                stream.write(bytes, 0, encodeUtf8(length));
+                if (length < count) {
+                    chars[0] = chars[length];
+                }
+                count -= length;
+            }
+        }
+
+        /**
+         * Encodes the buffered characters to UTF-8, replacing unpaired surrogates by <code>?</code> like
+         * {@link String#getBytes(Charset)}.
+         *
+         * @return the number of encoded bytes
+         */
+        private int encodeUtf8(int length) {
+            int n = 0;
+            for (int i = 0; i < length; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    bytes[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[n++] = (byte) (0xC0 | (c >> 6));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    bytes[n++] = (byte) (0xE0 | (c >> 12));
+                    bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                    int codePoint = Character.toCodePoint(c, chars[++i]);
+                    bytes[n++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    bytes[n++] = '?';
+                }
+            }
+            return n;
+        }
+    }
+}
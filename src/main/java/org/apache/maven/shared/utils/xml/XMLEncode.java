@@ -32,23 +32,39 @@ final class XMLEncode {
 
     private static final char DEFAULT_QUOTE_CHAR = '"';
 
+    private static final String CDATA_START = "<![CDATA[";
+
+    private static final String CDATA_END = "]]>";
+
     static void xmlEncodeText(String text, Writer writer) throws IOException {
         if (text == null) {
             return;
         }
 
-        if (!needsEncoding(text)) {
+        // a single scan finds out whether the text needs encoding, and whether it can be written as CDATA
+        boolean needsEncoding = false;
+        boolean containsCdataEnd = false;
+        int length = text.length();
+        for (int i = 0; i < length && !(needsEncoding && containsCdataEnd); i++) {
+            char c = text.charAt(i);
+            if (c == '&' || c == '<') {
+                needsEncoding = true;
+            } else if (c == '>' && i >= 2 && text.charAt(i - 1) == ']' && text.charAt(i - 2) == ']') {
+                containsCdataEnd = true;
+            }
+        }
+
+        if (!needsEncoding) {
+            writer.write(text);
+            return;
+        }
+
+        // only encode as cdata if is is longer than CDATA block overhead:
+        if (length > CDATA_BLOCK_THRESHOLD_LENGTH && !containsCdataEnd) {
+            writer.write(CDATA_START);
             writer.write(text);
+            writer.write(CDATA_END);
             return;
-        } else {
-            // only encode as cdata if is is longer than CDATA block overhead:
-            if (text.length() > CDATA_BLOCK_THRESHOLD_LENGTH) {
-                String cdata = xmlEncodeTextAsCDATABlock(text);
-                if (cdata != null) {
-                    writer.write(cdata);
-                    return;
-                }
-            }
         }
 
         // if every thing else fails, do it the save way...
@@ -62,90 +78,61 @@ final class XMLEncode {
 
         int length = text.length();
         if (forAttribute) {
-            n.append(quoteChar);
+            n.write(quoteChar);
         }
 
+        // the characters between two encoded ones are written in one go
+        int runStart = 0;
         for (int i = 0; i < length; i++) {
-            char c = text.charAt(i);
-            switch (c) {
+            String encoded;
+            switch (text.charAt(i)) {
                 case '&':
-                    n.append("&amp;");
+                    encoded = "&amp;";
                     break;
                 case '<':
-                    n.append("&lt;");
+                    encoded = "&lt;";
                     break;
                 case '>': // FIX for sourceforge bug #802520 ("]]>" needs encoding)
-                    n.append("&gt;");
+                    encoded = "&gt;";
                     break;
                 case '"':
-                    if (forAttribute) {
-                        n.append("&quot;");
-                    } else {
-                        n.append(c);
+                    if (!forAttribute) {
+                        continue;
                     }
+                    encoded = "&quot;";
                     break;
                 case '\'':
-                    if (forAttribute) {
-                        n.append("&apos;");
-                    } else {
-                        n.append(c);
+                    if (!forAttribute) {
+                        continue;
                     }
+                    encoded = "&apos;";
                     break;
                 case '\r':
-                    if (forAttribute) {
-                        if (i == (length - 1) || text.charAt(i + 1) != '\n') {
-                            n.append("&#13;");
-                        }
-                    } else {
-                        n.append(c);
+                    if (!forAttribute) {
+                        continue;
                     }
                     // but skip the \r in \r\n
-
+                    encoded = i == (length - 1) || text.charAt(i + 1) != '\n' ? "&#13;" : "";
                     break;
                 case '\n':
-                    if (forAttribute) {
-                        n.append("&#10;");
-                    }
+                    encoded = forAttribute ? "&#10;" : "";
                     break;
-
                 default:
-                    n.append(c);
-                    break;
+                    continue;
             }
-        }
-
-        if (forAttribute) {
-            n.append(quoteChar);
-        }
-    }
 
-    /**
-     * Returns string as CDATA block if possible, otherwise null.
-     */
-    private static String xmlEncodeTextAsCDATABlock(String text) {
-        if (text == null) {
-            return null;
+            if (i > runStart) {
+                n.write(text, runStart, i - runStart);
+            }
+            n.write(encoded);
+            runStart = i + 1;
         }
-        if (!text.contains("]]>")) {
-            return "<![CDATA[" + text + "]]>";
-        } else {
-            return null;
+        if (runStart < length) {
+            n.write(text, runStart, length - runStart);
         }
-    }
 
-    /**
-     * Checks if this text needs encoding in order to be represented in XML.
-     */
-    private static boolean needsEncoding(String text) {
-        if (text == null) {
-            return false;
-        }
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (c == '&' || c == '<') {
-                return true;
-            }
+        if (forAttribute) {
+            n.write(quoteChar);
         }
-        return false;
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.xml;
+
+import javax.xml.parsers.FactoryConfigurationError;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Keeps one idle {@link XMLReader} per thread, so building many small documents does not pay the bootstrap of a
+ * parser each time. A SAX parser resets itself at the start of every parse, after a failed one as well; it only has
+ * to forget the handlers of the previous document, to not retain its DOM.
+ * <p>
+ * The readers are created from the parser bundled with the JDK, through {@link SAXParserFactory} and without
+ * touching the global <code>org.xml.sax.driver</code> or <code>javax.xml.parsers.SAXParserFactory</code> system
+ * properties, so they are safe to use in parallel builds.
+ */
+final class XmlReaderPool {
+
+    /**
+     * The JAXP factory of the JDK parser, which is what <code>XMLReaderFactory</code> defaults to.
+     */
+    private static final String JDK_SAX_PARSER_FACTORY =
+            "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl";
+
+    private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+
+    private static final SAXParserFactory FACTORY = newFactory();
+
+    private static final ThreadLocal<XMLReader> IDLE = new ThreadLocal<>();
+
+    private XmlReaderPool() {}
+
+    private static SAXParserFactory newFactory() {
+        SAXParserFactory factory;
+        try {
+            factory = SAXParserFactory.newInstance(JDK_SAX_PARSER_FACTORY, null);
+        } catch (FactoryConfigurationError e) {
+            // not an OpenJDK based runtime
+            factory = SAXParserFactory.newInstance();
+        }
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
+    /**
+     * Takes the idle reader of the current thread, or creates a new one if there is none, e.g. while a reader of the
+     * thread is in use.
+     *
+     * @return a reader, to be given back with {@link #release(XMLReader)}
+     * @throws SAXException if no reader can be created
+     */
+    static XMLReader acquire() throws SAXException {
+        XMLReader reader = IDLE.get();
+        if (reader != null) {
+            IDLE.remove();
+            return reader;
+        }
+
+        try {
+            // SAXParserFactory is not guaranteed to be thread-safe
+            synchronized (FACTORY) {
+                return FACTORY.newSAXParser().getXMLReader();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Gives a reader back for the next document parsed by the current thread.
+     *
+     * @param reader a reader obtained from {@link #acquire()}
+     */
+    static void release(XMLReader reader) {
+        reader.setContentHandler(NO_HANDLER);
+        IDLE.set(reader);
+    }
+}
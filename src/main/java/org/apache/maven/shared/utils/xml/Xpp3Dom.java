@@ -20,12 +20,17 @@ package org.apache.maven.shared.utils.xml;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.jspecify.annotations.NonNull;
 
@@ -42,14 +47,36 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
 
     private String value;
 
-    private Map<String, String> attributes;
+    /**
+     * The attribute names and values, alternating in the order they were set, <code>null</code> if there are none.
+     */
+    private String[] attributes;
 
-    final List<Xpp3Dom> childList;
+    /**
+     * The children, <code>null</code> for a leaf.
+     */
+    private List<Xpp3Dom> childList;
 
-    final Map<String, Xpp3Dom> childMap;
+    /**
+     * The last child of each name, only built once there are more than {@link #CHILD_INDEX_THRESHOLD} children or a
+     * child was removed.
+     */
+    private Map<String, Xpp3Dom> childMap;
 
     private Xpp3Dom parent;
 
+    private boolean frozen;
+
+    /**
+     * The cached {@link #hashCode()} of a frozen node, <code>0</code> if not computed yet.
+     */
+    private int hash;
+
+    /**
+     * The cached {@link #digest()} of a frozen node, <code>null</code> if not computed yet.
+     */
+    private String digest;
+
     /**
      * The attribute which identifies merge/append.
      */
@@ -86,13 +113,21 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
     private static final Xpp3Dom[] EMPTY_DOM_ARRAY = new Xpp3Dom[0];
 
+    /**
+     * Up to this number of children, {@link #getChild(String)} scans the children instead of maintaining an index.
+     */
+    private static final int CHILD_INDEX_THRESHOLD = 8;
+
+    /**
+     * The initial capacity of the buffer of {@link #toString()}, which fits small configurations without growing.
+     */
+    private static final int TO_STRING_CAPACITY = 256;
+
     /**
      * @param name the name of the instance
      */
     public Xpp3Dom(String name) {
         this.name = name;
-        childList = new ArrayList<>();
-        childMap = new HashMap<>();
     }
 
     boolean isValueSet() {
@@ -117,18 +152,17 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
     public Xpp3Dom(@NonNull Xpp3Dom src, String name) {
         this.name = name;
 
-        int size = src.getChildCount();
-        childList = new ArrayList<>(size);
-        childMap = new HashMap<>();
-
         setValue(src.getValue());
 
-        for (String attributeName : src.getAttributeNames()) {
-            setAttribute(attributeName, src.getAttribute(attributeName));
+        if (src.attributes != null) {
+            attributes = src.attributes.clone();
         }
 
-        for (Xpp3Dom xpp3Dom : src.getChildren()) {
-            addChild(new Xpp3Dom(xpp3Dom));
+        if (src.childList != null) {
+            childList = new ArrayList<>(src.childList.size());
+            for (Xpp3Dom xpp3Dom : src.childList) {
+                addChild(new Xpp3Dom(xpp3Dom));
+            }
         }
     }
 
@@ -151,15 +185,25 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
      * @param value the value to be set
      */
     public void setValue(@NonNull String value) {
+        checkMutable();
         this.value = value;
     }
 
     /**
+     * Returns the attribute names in the order they were first set. Versions before 3.5.0 returned them, and wrote them
+     * in {@link #toString()}, in the undefined iteration order of a {@link HashMap}.
+     *
      * @return the array of attribute names
      */
     public String[] getAttributeNames() {
-        boolean isNothing = attributes == null || attributes.isEmpty();
-        return isNothing ? EMPTY_STRING_ARRAY : attributes.keySet().toArray(new String[attributes.size()]);
+        if (attributes == null) {
+            return EMPTY_STRING_ARRAY;
+        }
+        String[] names = new String[attributes.length / 2];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = attributes[2 * i];
+        }
+        return names;
     }
 
     /**
@@ -167,7 +211,42 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
      * @return the attribute value
      */
     public String getAttribute(String nameParameter) {
-        return this.attributes != null ? this.attributes.get(nameParameter) : null;
+        int index = indexOfAttribute(nameParameter);
+        return index >= 0 ? attributes[index + 1] : null;
+    }
+
+    /**
+     * @return the number of attributes
+     */
+    int getAttributeCount() {
+        return attributes != null ? attributes.length / 2 : 0;
+    }
+
+    /**
+     * @param i the index of the attribute, in the order of {@link #getAttributeNames()}
+     * @return the name of the attribute
+     */
+    String getAttributeName(int i) {
+        return attributes[2 * i];
+    }
+
+    /**
+     * @param i the index of the attribute, in the order of {@link #getAttributeNames()}
+     * @return the value of the attribute
+     */
+    String getAttributeValue(int i) {
+        return attributes[2 * i + 1];
+    }
+
+    private int indexOfAttribute(String nameParameter) {
+        if (attributes != null) {
+            for (int i = 0; i < attributes.length; i += 2) {
+                if (attributes[i].equals(nameParameter)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
     }
 
     /**
@@ -181,11 +260,19 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
         if (nameParameter == null) {
             throw new NullPointerException("name can not be null");
         }
-        if (attributes == null) {
-            attributes = new HashMap<>();
-        }
+        checkMutable();
 
-        attributes.put(nameParameter, valueParameter);
+        int index = indexOfAttribute(nameParameter);
+        if (index >= 0) {
+            attributes[index + 1] = valueParameter;
+        } else if (attributes == null) {
+            attributes = new String[] {nameParameter, valueParameter};
+        } else {
+            index = attributes.length;
+            attributes = Arrays.copyOf(attributes, index + 2);
+            attributes[index] = nameParameter;
+            attributes[index + 1] = valueParameter;
+        }
     }
 
     /**
@@ -193,24 +280,55 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
      * @return the child selected by index
      */
     public Xpp3Dom getChild(int i) {
-        return childList.get(i);
+        return getChildrenList().get(i);
     }
 
     /**
+     * Returns the last child added with the name. Once that child is removed, <code>null</code> is returned until
+     * another child of the name is added, even if earlier children of the name remain.
+     *
      * @param nameParameter the name of the child
      * @return the child selected by name
      */
     public Xpp3Dom getChild(String nameParameter) {
-        return childMap.get(nameParameter);
+        if (childMap != null) {
+            return childMap.get(nameParameter);
+        }
+        if (childList != null) {
+            for (int i = childList.size() - 1; i >= 0; i--) {
+                Xpp3Dom child = childList.get(i);
+                if (Objects.equals(nameParameter, child.getName())) {
+                    return child;
+                }
+            }
+        }
+        return null;
     }
 
     /**
      * @param child the child to be added
      */
     public void addChild(Xpp3Dom child) {
-        child.setParent(this);
+        checkMutable();
+        if (!child.frozen) {
+            child.setParent(this);
+        }
+        if (childList == null) {
+            childList = new ArrayList<>();
+        }
         childList.add(child);
-        childMap.put(child.getName(), child);
+        if (childMap != null) {
+            childMap.put(child.getName(), child);
+        } else if (childList.size() > CHILD_INDEX_THRESHOLD) {
+            indexChildren();
+        }
+    }
+
+    private void indexChildren() {
+        childMap = new HashMap<>();
+        for (Xpp3Dom child : childList) {
+            childMap.put(child.getName(), child);
+        }
     }
 
     /**
@@ -221,7 +339,10 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
         return isNothing ? EMPTY_DOM_ARRAY : childList.toArray(new Xpp3Dom[childList.size()]);
     }
 
-    private List<Xpp3Dom> getChildrenList() {
+    /**
+     * @return the children, without copying them
+     */
+    List<Xpp3Dom> getChildrenList() {
         boolean isNothing = childList == null || childList.isEmpty();
         return isNothing ? Collections.emptyList() : childList;
     }
@@ -264,9 +385,45 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
      * @param i the child to be removed
      */
     public void removeChild(int i) {
+        checkMutable();
+        if (childList == null) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: 0");
+        }
+        if (childMap == null) {
+            // scanning the children would find an earlier child of the same name
+            indexChildren();
+        }
         Xpp3Dom child = childList.remove(i);
-        childMap.values().remove(child);
-        child.setParent(null);
+        childMap.remove(child.getName(), child);
+        if (!child.frozen) {
+            child.setParent(null);
+        }
+    }
+
+    /**
+     * Removes all the children, without detaching them from this parent.
+     */
+    void clearChildren() {
+        checkMutable();
+        childList = null;
+        childMap = null;
+    }
+
+    /**
+     * Replaces a child by another one at the same position.
+     *
+     * @param index the index of the child to replace
+     * @param replacement the replacing child
+     */
+    void replaceChild(int index, Xpp3Dom replacement) {
+        checkMutable();
+        Xpp3Dom child = childList.set(index, replacement);
+        if (childMap != null && childMap.get(child.getName()) == child) {
+            childMap.put(replacement.getName(), replacement);
+        }
+        if (!replacement.frozen) {
+            replacement.setParent(this);
+        }
     }
 
     /**
@@ -280,9 +437,75 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
      * @param parent set the parent
      */
     public void setParent(Xpp3Dom parent) {
+        checkMutable();
         this.parent = parent;
     }
 
+    /**
+     * <p>
+     * Makes this node and all its descendants immutable: their mutators throw {@link UnsupportedOperationException}
+     * from now on, and a mutable copy is obtained with {@link #Xpp3Dom(Xpp3Dom)}.
+     * </p>
+     * <p>
+     * A frozen node can be shared by several trees instead of being copied: when adding it as a child, its parent is
+     * left unchanged. In particular {@link Xpp3DomUtils#merge(Xpp3Dom, Xpp3Dom, Boolean)} adopts frozen recessive
+     * children by reference, and only copies the frozen dominant nodes it has to modify, without their children.
+     * Freezing the configurations inherited by many others saves copying them over and over.
+     * </p>
+     * <p>
+     * Frozen nodes also cache their {@link #hashCode()} and {@link #digest()}, and two frozen nodes with different hash
+     * codes are rejected by {@link #equals(Object)} without comparing their descendants, which makes them cheap keys
+     * of hash based collections.
+     * </p>
+     *
+     * @return this node
+     * @since 3.5.0
+     */
+    public Xpp3Dom freeze() {
+        if (!frozen) {
+            frozen = true;
+            if (childList != null) {
+                for (Xpp3Dom child : childList) {
+                    child.freeze();
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if this node is immutable
+     * @see #freeze()
+     * @since 3.5.0
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Xpp3Dom " + name + " is frozen");
+        }
+    }
+
+    /**
+     * @return a mutable copy of this node sharing the children, which are frozen if this node is
+     */
+    Xpp3Dom shallowCopy() {
+        Xpp3Dom copy = new Xpp3Dom(name);
+        copy.value = value;
+        if (attributes != null) {
+            copy.attributes = attributes.clone();
+        }
+        if (childList != null) {
+            copy.childList = new ArrayList<>(childList);
+            if (childMap != null) {
+                copy.childMap = new HashMap<>(childMap);
+            }
+        }
+        return copy;
+    }
+
     /**
      * @param dominant the dominant part
      * @param recessive the recessive part
@@ -316,54 +539,166 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
 
         Xpp3Dom dom = (Xpp3Dom) obj;
 
+        // the hash codes of frozen nodes are computed once, and a difference proves the nodes unequal
+        if (frozen && dom.frozen && hashCode() != dom.hashCode()) {
+            return false;
+        }
+
         return !(name == null ? dom.name != null : !name.equals(dom.name))
                 && !(value == null ? dom.value != null : !value.equals(dom.value))
-                && !(attributes == null ? dom.attributes != null : !attributes.equals(dom.attributes))
-                && !(childList == null ? dom.childList != null : !childList.equals(dom.childList));
+                && attributesEqual(dom)
+                && getChildrenList().equals(dom.getChildrenList());
+    }
+
+    private boolean attributesEqual(Xpp3Dom dom) {
+        if (attributes == null || dom.attributes == null) {
+            return attributes == dom.attributes;
+        }
+        if (attributes.length != dom.attributes.length) {
+            return false;
+        }
+        for (int i = 0; i < attributes.length; i += 2) {
+            if (!attributes[i + 1].equals(dom.getAttribute(attributes[i]))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The hash code of a frozen node is computed once and cached.
      */
     public int hashCode() {
-        int result = 17;
-        result = 37 * result + (name != null ? name.hashCode() : 0);
-        result = 37 * result + (value != null ? value.hashCode() : 0);
-        result = 37 * result + (attributes != null ? attributes.hashCode() : 0);
-        result = 37 * result + (childList != null ? childList.hashCode() : 0);
+        int result = hash;
+        if (result == 0) {
+            result = 17;
+            result = 37 * result + (name != null ? name.hashCode() : 0);
+            result = 37 * result + (value != null ? value.hashCode() : 0);
+            result = 37 * result + attributesHashCode();
+            result = 37 * result + getChildrenList().hashCode();
+            if (frozen) {
+                hash = result;
+            }
+        }
         return result;
     }
 
+    /**
+     * @return the hash code of the attributes as if they were a {@link Map}
+     */
+    private int attributesHashCode() {
+        int hashCode = 0;
+        if (attributes != null) {
+            for (int i = 0; i < attributes.length; i += 2) {
+                hashCode += attributes[i].hashCode() ^ attributes[i + 1].hashCode();
+            }
+        }
+        return hashCode;
+    }
+
+    /**
+     * <p>
+     * Computes a SHA-256 digest of the content of this node and its descendants: their names, values, attributes and
+     * the order of the children. Nodes which are {@link #equals(Object) equal} have the same digest, which does not
+     * depend on the order the attributes were set in nor on the JVM, so it can serve as a persistent cache key.
+     * </p>
+     * <p>
+     * The digest of a frozen node is computed once and cached, and is reused by the digest of the trees sharing it.
+     * </p>
+     *
+     * @return the digest as 64 lowercase hexadecimal digits
+     * @since 3.5.0
+     */
+    public String digest() {
+        String result = digest;
+        if (result == null) {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // every Java platform supports SHA-256
+                throw (AssertionError) new AssertionError("SHA-256 is not supported").initCause(e);
+            }
+
+            updateDigest(md, name);
+            updateDigest(md, value);
+            String[] names = getAttributeNames();
+            Arrays.sort(names);
+            updateDigest(md, names.length);
+            for (String attributeName : names) {
+                updateDigest(md, attributeName);
+                updateDigest(md, getAttribute(attributeName));
+            }
+            List<Xpp3Dom> children = getChildrenList();
+            updateDigest(md, children.size());
+            for (Xpp3Dom child : children) {
+                updateDigest(md, child.digest());
+            }
+
+            result = toHex(md.digest());
+            if (frozen) {
+                digest = result;
+            }
+        }
+        return result;
+    }
+
+    private static void updateDigest(MessageDigest md, int length) {
+        md.update((byte) (length >>> 24));
+        md.update((byte) (length >>> 16));
+        md.update((byte) (length >>> 8));
+        md.update((byte) length);
+    }
+
+    /**
+     * Adds the string prefixed by its length, or <code>-1</code> if <code>null</code>, so that consecutive strings
+     * cannot be confused.
+     */
+    private static void updateDigest(MessageDigest md, String str) {
+        if (str == null) {
+            updateDigest(md, -1);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            updateDigest(md, bytes.length);
+            md.update(bytes);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[2 * i + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
     /**
      * {@inheritDoc}
      */
     public String toString() {
-        try {
-            StringWriter writer = new StringWriter();
-            Xpp3DomWriter.write(getPrettyPrintXMLWriter(writer), this);
-            return writer.toString();
-        } catch (final IOException e) {
-            // JDK error in StringWriter.
-            throw (AssertionError) new AssertionError("Unexpected IOException from StringWriter.").initCause(e);
-        }
+        return toString(true);
     }
 
     /**
      * @return unescaped string
      */
     public String toUnescapedString() {
-        try {
-            StringWriter writer = new StringWriter();
-            Xpp3DomWriter.write(getPrettyPrintXMLWriter(writer), this, false);
-            return writer.toString();
+        return toString(false);
+    }
+
+    private String toString(boolean escape) {
+        StringWriter writer = new StringWriter(TO_STRING_CAPACITY);
+        try (BufferedXMLWriter xmlWriter = new BufferedXMLWriter(writer)) {
+            xmlWriter.setEncoding("UTF-8");
+            Xpp3DomWriter.write(xmlWriter, this, escape);
         } catch (final IOException e) {
             // JDK error in StringWriter.
             throw (AssertionError) new AssertionError("Unexpected IOException from StringWriter.").initCause(e);
         }
-    }
-
-    private PrettyPrintXMLWriter getPrettyPrintXMLWriter(StringWriter writer) {
-        return new PrettyPrintXMLWriter(writer, "UTF-8", null);
+        return writer.toString();
     }
 
     /**
@@ -396,6 +731,7 @@ public class Xpp3Dom implements Iterable<Xpp3Dom> {
      * {@inheritDoc}
      */
     public Iterator<Xpp3Dom> iterator() {
-        return getChildrenList().iterator();
+        List<Xpp3Dom> children = getChildrenList();
+        return frozen ? Collections.unmodifiableList(children).iterator() : children.iterator();
     }
 }
@@ -24,11 +24,16 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.apache.maven.shared.utils.xml.pull.XmlPullParserException;
 import org.jspecify.annotations.NonNull;
 import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -88,7 +93,8 @@ public class Xpp3DomBuilder {
     @Deprecated
     public static Xpp3Dom build(Reader in, boolean noop) throws XmlPullParserException {
         try (Reader reader = in) {
-            DocHandler docHandler = parseSax(new InputSource(reader));
+            DocHandler docHandler = new DocHandler();
+            parseSax(new InputSource(reader), docHandler);
             reader.close();
             return docHandler.result;
         } catch (final IOException e) {
@@ -96,13 +102,55 @@ public class Xpp3DomBuilder {
         }
     }
 
-    private static DocHandler parseSax(@NonNull InputSource inputSource) throws XmlPullParserException {
+    /**
+     * Builds only the elements selected by paths, skipping the rest of the document without building it. A path
+     * selects elements from the root down, one name per level, <code>*</code> matching any name: for instance
+     * <code>/project/dependencies</code> or <code>/project/build/plugins/*</code>. The subtree of a selected element
+     * is built entirely, elements selected within it are not returned separately.
+     *
+     * @param reader {@link Reader}
+     * @param paths the paths of the elements to build
+     * @return the selected elements in document order, without parent
+     * @throws XmlPullParserException in case of an error
+     * @since 3.5.0
+     */
+    public static List<Xpp3Dom> buildFiltered(@NonNull Reader reader, @NonNull String... paths)
+            throws XmlPullParserException {
+        List<Xpp3Dom> selected = new ArrayList<>();
+        buildFiltered(reader, selected::add, paths);
+        return selected;
+    }
+
+    /**
+     * Builds only the elements selected by paths like {@link #buildFiltered(Reader, String...)}, handing each one
+     * over as soon as its end tag was parsed. Memory use stays proportional to the largest selected element, whatever
+     * the size of the document.
+     *
+     * @param in {@link Reader}
+     * @param consumer receives the selected elements in document order, without parent
+     * @param paths the paths of the elements to build
+     * @throws XmlPullParserException in case of an error
+     * @since 3.5.0
+     */
+    public static void buildFiltered(@NonNull Reader in, @NonNull Consumer<Xpp3Dom> consumer, @NonNull String... paths)
+            throws XmlPullParserException {
+        FilterHandler filterHandler = new FilterHandler(paths, consumer);
+        try (Reader reader = in) {
+            parseSax(new InputSource(reader), filterHandler);
+        } catch (final IOException e) {
+            throw new XmlPullParserException(e);
+        }
+    }
+
+    private static void parseSax(@NonNull InputSource inputSource, ContentHandler ch) throws XmlPullParserException {
         try {
-            DocHandler ch = new DocHandler();
-            XMLReader parser = createXmlReader();
-            parser.setContentHandler(ch);
-            parser.parse(inputSource);
-            return ch;
+            XMLReader parser = XmlReaderPool.acquire();
+            try {
+                parser.setContentHandler(ch);
+                parser.parse(inputSource);
+            } finally {
+                XmlReaderPool.release(parser);
+            }
         } catch (IOException e) {
             throw new XmlPullParserException(e);
         } catch (SAXException e) {
@@ -110,42 +158,127 @@ public class Xpp3DomBuilder {
         }
     }
 
-    private static XMLReader createXmlReader() throws SAXException {
-        XMLReader comSunXmlReader = instantiate("com.sun.org.apache.xerces.internal.parsers.SAXParser");
-        if (comSunXmlReader != null) {
-            return comSunXmlReader;
+    /**
+     * Forwards the events of the selected elements to a {@link DocHandler}. The path to the current element is only
+     * tracked while it may still lead to a selected element, within other elements only the depth is counted.
+     */
+    private static class FilterHandler extends DefaultHandler {
+        private final String[][] selectors;
+
+        private final Consumer<Xpp3Dom> consumer;
+
+        private final DocHandler docHandler = new DocHandler();
+
+        private final List<String> path = new ArrayList<>();
+
+        /**
+         * The depth within the selected element being built, <code>0</code> outside.
+         */
+        private int selectedDepth;
+
+        /**
+         * The depth within an element leading to no selected element, <code>0</code> outside.
+         */
+        private int skippedDepth;
+
+        FilterHandler(String[] paths, Consumer<Xpp3Dom> consumer) {
+            this.consumer = consumer;
+            selectors = new String[paths.length][];
+            for (int i = 0; i < paths.length; i++) {
+                String p = paths[i].startsWith("/") ? paths[i].substring(1) : paths[i];
+                selectors[i] = p.split("/", -1);
+                for (String name : selectors[i]) {
+                    if (name.isEmpty()) {
+                        throw new IllegalArgumentException("Invalid path: " + paths[i]);
+                    }
+                }
+            }
         }
 
-        String key = "org.xml.sax.driver";
-        String oldParser = System.getProperty(key);
-        System.clearProperty(key); // There's a "slight" problem with this an parallel maven: It does not work ;)
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            if (selectedDepth > 0) {
+                selectedDepth++;
+                docHandler.startElement(uri, localName, qName, attributes);
+            } else if (skippedDepth > 0) {
+                skippedDepth++;
+            } else {
+                path.add(localName);
+                boolean leads = false;
+                for (String[] selector : selectors) {
+                    if (matches(selector)) {
+                        if (selector.length == path.size()) {
+                            path.remove(path.size() - 1);
+                            selectedDepth = 1;
+                            docHandler.startElement(uri, localName, qName, attributes);
+                            return;
+                        }
+                        leads = true;
+                    }
+                }
+                if (!leads) {
+                    path.remove(path.size() - 1);
+                    skippedDepth = 1;
+                }
+            }
+        }
 
-        try {
-            return org.xml.sax.helpers.XMLReaderFactory.createXMLReader();
-        } finally {
-            if (oldParser != null) {
-                System.setProperty(key, oldParser);
+        /**
+         * @return <code>true</code> if the selector starts with the current path
+         */
+        private boolean matches(String[] selector) {
+            int depth = path.size();
+            if (selector.length < depth) {
+                return false;
             }
+            for (int i = 0; i < depth; i++) {
+                if (!"*".equals(selector[i]) && !selector[i].equals(path.get(i))) {
+                    return false;
+                }
+            }
+            return true;
         }
-    }
 
-    private static XMLReader instantiate(String s) {
-        try {
-            Class<?> aClass = Thread.currentThread().getContextClassLoader().loadClass(s);
-            return (XMLReader) aClass.newInstance();
-        } catch (ClassNotFoundException e) {
-            return null;
-        } catch (InstantiationException e) {
-            return null;
-        } catch (IllegalAccessException e) {
-            return null;
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (selectedDepth > 0) {
+                docHandler.endElement(uri, localName, qName);
+                if (--selectedDepth == 0) {
+                    Xpp3Dom selected = docHandler.result;
+                    docHandler.result = null;
+                    consumer.accept(selected);
+                }
+            } else if (skippedDepth > 0) {
+                skippedDepth--;
+            } else {
+                path.remove(path.size() - 1);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (selectedDepth > 0) {
+                docHandler.characters(ch, start, length);
+            }
         }
     }
 
     private static class DocHandler extends DefaultHandler {
         private final List<Xpp3Dom> elemStack = new ArrayList<>();
 
-        private final List<StringBuilder> values = new ArrayList<>();
+        /**
+         * The text of the open elements, each one starting at the offset recorded in {@link #textStarts} for its depth.
+         * The text of an element is cut off once it ended, so the buffer is reused for the whole document.
+         */
+        private final StringBuilder text = new StringBuilder();
+
+        private int[] textStarts = new int[16];
+
+        /**
+         * Shares the element and attribute names among the nodes of the document.
+         */
+        private final Map<String, String> symbols = new HashMap<>();
 
         Xpp3Dom result = null;
 
@@ -155,24 +288,32 @@ public class Xpp3DomBuilder {
         public void startElement(String uri, String localName, String qName, Attributes attributes)
                 throws SAXException {
             spacePreserve = false;
-            Xpp3Dom child = new Xpp3Dom(localName);
+            Xpp3Dom child = new Xpp3Dom(symbol(localName));
 
             attachToParent(child);
             pushOnStack(child);
 
-            values.add(new StringBuilder());
-
             int size = attributes.getLength();
             for (int i = 0; i < size; i++) {
-                String name = attributes.getQName(i);
+                String name = symbol(attributes.getQName(i));
                 String value = attributes.getValue(i);
                 child.setAttribute(name, value);
                 spacePreserve = spacePreserve || ("xml:space".equals(name) && "preserve".equals(value));
             }
         }
 
-        private boolean pushOnStack(Xpp3Dom child) {
-            return elemStack.add(child);
+        private String symbol(String name) {
+            String symbol = symbols.putIfAbsent(name, name);
+            return symbol != null ? symbol : name;
+        }
+
+        private void pushOnStack(Xpp3Dom child) {
+            int depth = elemStack.size();
+            if (depth == textStarts.length) {
+                textStarts = Arrays.copyOf(textStarts, depth * 2);
+            }
+            textStarts[depth] = text.length();
+            elemStack.add(child);
         }
 
         private void attachToParent(Xpp3Dom child) {
@@ -193,16 +334,12 @@ public class Xpp3DomBuilder {
 
             Xpp3Dom element = pop();
 
-            /* this Object could be null if it is a singleton tag */
-            Object accumulatedValue = values.remove(depth);
-
+            int textStart = textStarts[depth];
             if (element.getChildCount() == 0) {
-                if (accumulatedValue == null) {
-                    element.setValue(""); // null in xpp3dom, but we don't do that around here
-                } else {
-                    element.setValue(accumulatedValue.toString());
-                }
+                // empty for a singleton tag: null in xpp3dom, but we don't do that around here
+                element.setValue(text.substring(textStart));
             }
+            text.setLength(textStart);
 
             if (depth == 0) {
                 result = element;
@@ -211,13 +348,11 @@ public class Xpp3DomBuilder {
 
         @Override
         public void characters(char[] ch, int start, int length) throws SAXException {
-            String text = new String(ch, start, length);
-            appendToTopValue(text);
-        }
-
-        private void appendToTopValue(String toAppend) {
-            StringBuilder stringBuilder = values.get(values.size() - 1);
-            stringBuilder.append(toAppend);
+            // only the text of leaves is kept, skip e.g. the indentation between children
+            int depth = elemStack.size();
+            if (depth > 0 && elemStack.get(depth - 1).getChildCount() == 0) {
+                text.append(ch, start, length);
+            }
         }
     }
 }
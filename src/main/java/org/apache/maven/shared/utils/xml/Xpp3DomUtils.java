@@ -18,9 +18,9 @@
  */
 package org.apache.maven.shared.utils.xml;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -48,6 +48,11 @@ public class Xpp3DomUtils {
     }
 
     /**
+     * Merges the recessive DOM into the dominant one. The recessive DOM is left unchanged: the recessive children
+     * missing from the dominant DOM are copied, unless they are {@link Xpp3Dom#freeze() frozen} in which case they are
+     * shared. The dominant DOM is modified, except its frozen nodes: those are copied, but not their children, and the
+     * copies are returned instead.
+     *
      * @param dominant {@link Xpp3Dom}
      * @param recessive {@link Xpp3Dom}
      * @param childMergeOverride true/false
@@ -58,6 +63,11 @@ public class Xpp3DomUtils {
             return dominant;
         }
 
+        if (dominant.isFrozen()) {
+            // copy on write
+            dominant = dominant.shallowCopy();
+        }
+
         if (isEmpty(dominant.getValue())) {
             dominant.setValue(recessive.getValue());
         }
@@ -72,21 +82,25 @@ public class Xpp3DomUtils {
             boolean mergeChildren = isMergeChildren(dominant, childMergeOverride);
 
             if (mergeChildren) {
-                Map<String, Iterator<Xpp3Dom>> commonChildren = getCommonChildren(dominant, recessive);
+                Map<String, ChildIndices> dominantChildren = groupChildren(dominant);
                 for (Xpp3Dom recessiveChild : recessive) {
-                    Iterator<Xpp3Dom> it = commonChildren.get(recessiveChild.getName());
-                    if (it == null) {
-                        dominant.addChild(new Xpp3Dom(recessiveChild));
-                    } else if (it.hasNext()) {
-                        Xpp3Dom dominantChild = it.next();
-                        merge(dominantChild, recessiveChild, childMergeOverride);
+                    ChildIndices indices = dominantChildren.get(recessiveChild.getName());
+                    if (indices == null) {
+                        dominant.addChild(adopt(recessiveChild));
+                    } else if (indices.hasNext()) {
+                        int index = indices.next();
+                        Xpp3Dom dominantChild = dominant.getChild(index);
+                        Xpp3Dom merged = merge(dominantChild, recessiveChild, childMergeOverride);
+                        if (merged != dominantChild) {
+                            dominant.replaceChild(index, merged);
+                        }
                     }
                 }
             } else {
                 Xpp3Dom[] dominantChildren = dominant.getChildren();
-                dominant.childList.clear();
+                dominant.clearChildren();
                 for (Xpp3Dom child : recessive) {
-                    dominant.addChild(new Xpp3Dom(child));
+                    dominant.addChild(adopt(child));
                 }
 
                 for (Xpp3Dom aDominantChildren : dominantChildren) {
@@ -97,16 +111,59 @@ public class Xpp3DomUtils {
         return dominant;
     }
 
-    private static Map<String, Iterator<Xpp3Dom>> getCommonChildren(Xpp3Dom dominant, Xpp3Dom recessive) {
-        Map<String, Iterator<Xpp3Dom>> commonChildren = new HashMap<>();
+    private static Xpp3Dom adopt(Xpp3Dom recessiveChild) {
+        return recessiveChild.isFrozen() ? recessiveChild : new Xpp3Dom(recessiveChild);
+    }
+
+    /**
+     * Groups the children by name in a single pass, so that matching the recessive children stays linear in the
+     * number of children even when many of them share a name.
+     *
+     * @return the indices of the children for each name
+     */
+    private static Map<String, ChildIndices> groupChildren(Xpp3Dom dom) {
+        int count = dom.getChildCount();
+        if (count == 0) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, ChildIndices> children = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = dom.getChild(i).getName();
+            ChildIndices indices = children.get(name);
+            if (indices == null) {
+                indices = new ChildIndices();
+                children.put(name, indices);
+            }
+            indices.add(i);
+        }
+        return children;
+    }
+
+    /**
+     * The indices of the children of a name, consumed in order by the recessive children of the same name.
+     */
+    private static final class ChildIndices {
+        private int[] indices = new int[1];
+
+        private int size;
 
-        for (String childName : recessive.childMap.keySet()) {
-            List<Xpp3Dom> dominantChildren = dominant.getChildrenList(childName);
-            if (dominantChildren.size() > 0) {
-                commonChildren.put(childName, dominantChildren.iterator());
+        private int next;
+
+        void add(int index) {
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, size * 2);
             }
+            indices[size++] = index;
+        }
+
+        boolean hasNext() {
+            return next < size;
+        }
+
+        int next() {
+            return indices[next++];
         }
-        return commonChildren;
     }
 
     private static boolean isCombineSelfOverride(Xpp3Dom xpp3Dom) {
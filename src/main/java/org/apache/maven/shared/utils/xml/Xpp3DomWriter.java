@@ -21,6 +21,8 @@ package org.apache.maven.shared.utils.xml;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Brett Porter
@@ -62,16 +64,43 @@ public class Xpp3DomWriter {
      * @throws IOException if writing fails
      */
     public static void write(XMLWriter xmlWriter, Xpp3Dom dom, boolean escape) throws IOException {
-        xmlWriter.startElement(dom.getName());
-        String[] attributeNames = dom.getAttributeNames();
-        for (String attributeName : attributeNames) {
-            xmlWriter.addAttribute(attributeName, dom.getAttribute(attributeName));
+        // explicit stack of the open elements and the index of their next child, so deep trees cannot overflow
+        Xpp3Dom[] elements = new Xpp3Dom[16];
+        int[] nextChild = new int[16];
+        int depth = 0;
+
+        startElement(xmlWriter, dom);
+        elements[depth++] = dom;
+        while (depth > 0) {
+            Xpp3Dom element = elements[depth - 1];
+            List<Xpp3Dom> children = element.getChildrenList();
+            int index = nextChild[depth - 1];
+            if (index < children.size()) {
+                nextChild[depth - 1] = index + 1;
+                Xpp3Dom child = children.get(index);
+                startElement(xmlWriter, child);
+                if (depth == elements.length) {
+                    elements = Arrays.copyOf(elements, depth * 2);
+                    nextChild = Arrays.copyOf(nextChild, depth * 2);
+                }
+                elements[depth] = child;
+                nextChild[depth++] = 0;
+            } else {
+                endElement(xmlWriter, element, escape);
+                elements[--depth] = null;
+            }
         }
-        Xpp3Dom[] children = dom.getChildren();
-        for (Xpp3Dom aChildren : children) {
-            write(xmlWriter, aChildren, escape);
+    }
+
+    private static void startElement(XMLWriter xmlWriter, Xpp3Dom dom) throws IOException {
+        xmlWriter.startElement(dom.getName());
+        // in the order they were set
+        for (int i = 0; i < dom.getAttributeCount(); i++) {
+            xmlWriter.addAttribute(dom.getAttributeName(i), dom.getAttributeValue(i));
         }
+    }
 
+    private static void endElement(XMLWriter xmlWriter, Xpp3Dom dom, boolean escape) throws IOException {
         if (dom.isValueSet()) {
             String value = dom.getValue();
             if (escape) {
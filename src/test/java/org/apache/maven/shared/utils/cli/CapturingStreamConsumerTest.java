@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CapturingStreamConsumerTest {
+
+    private static final String LS = System.lineSeparator();
+
+    @Test
+    public void headTailKeepsWholeOutputBelowLimits() throws Exception {
+        CapturingStreamConsumer consumer = CapturingStreamConsumer.headTail(10, 10);
+        consumer.consumeLine("abc");
+        consumer.consumeLine("def");
+
+        assertFalse(consumer.isTruncated());
+        assertEquals("abc" + LS + "def" + LS, consumer.getOutput());
+        assertEquals(2, consumer.getLineCount());
+        assertEquals(6 + 2 * LS.length(), consumer.getCharCount());
+    }
+
+    @Test
+    public void headTailKeepsBeginningAndEnd() throws Exception {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            int headChars = random.nextInt(20);
+            int tailChars = random.nextInt(20);
+            CapturingStreamConsumer consumer = CapturingStreamConsumer.headTail(headChars, tailChars);
+            CommandLineUtils.StringStreamConsumer reference = new CommandLineUtils.StringStreamConsumer();
+
+            int lines = random.nextInt(10);
+            for (int i = 0; i < lines; i++) {
+                StringBuilder line = new StringBuilder();
+                for (int j = random.nextInt(30); j > 0; j--) {
+                    line.append((char) ('a' + random.nextInt(26)));
+                }
+                consumer.consumeLine(line.toString());
+                reference.consumeLine(line.toString());
+            }
+
+            String output = reference.getOutput();
+            String expected;
+            if (output.length() <= headChars + tailChars) {
+                expected = output;
+            } else {
+                int omitted = output.length() - headChars - tailChars;
+                expected = output.substring(0, headChars) + LS + "[... " + omitted + " characters omitted ...]" + LS
+                        + output.substring(output.length() - tailChars);
+            }
+            assertEquals(expected, consumer.getOutput(), "head " + headChars + ", tail " + tailChars);
+            assertEquals(output.length() > headChars + tailChars, consumer.isTruncated());
+            assertEquals(output.length(), consumer.getCharCount());
+        }
+    }
+
+    @Test
+    public void spillingMovesOutputToTemporaryFile() throws Exception {
+        CapturingStreamConsumer consumer = CapturingStreamConsumer.spilling(16);
+        File spillFile;
+        try {
+            consumer.consumeLine("first line");
+            assertNull(consumer.getSpillFile());
+
+            consumer.consumeLine("second line with non-ASCII \u00e9\u20ac");
+            spillFile = consumer.getSpillFile();
+            assertNotNull(spillFile);
+            assertTrue(spillFile.isFile());
+
+            assertFalse(consumer.isTruncated());
+            assertEquals("first line" + LS + "second line with non-ASCII \u00e9\u20ac" + LS, consumer.getOutput());
+        } finally {
+            consumer.close();
+        }
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void negativeSizesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CapturingStreamConsumer.headTail(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> CapturingStreamConsumer.headTail(10, -1));
+        assertThrows(IllegalArgumentException.class, () -> CapturingStreamConsumer.spilling(-1));
+    }
+
+    @Test
+    public void countingKeepsNoOutput() throws Exception {
+        CapturingStreamConsumer consumer = CapturingStreamConsumer.counting();
+        consumer.consumeLine("abc");
+        consumer.consumeLine("");
+
+        assertEquals("", consumer.getOutput());
+        assertTrue(consumer.isTruncated());
+        assertEquals(2, consumer.getLineCount());
+        assertEquals(3 + 2 * LS.length(), consumer.getCharCount());
+    }
+
+    @Test
+    public void capturesProcessOutput() throws Exception {
+        Commandline cl = new Commandline();
+        cl.setExecutable("java");
+        cl.addArguments("-version");
+
+        CapturingStreamConsumer err = CapturingStreamConsumer.headTail(5, 5);
+        CommandLineUtils.executeCommandLine(cl, null, err);
+
+        assertTrue(err.getLineCount() > 0);
+        assertTrue(err.getOutput().contains("characters omitted"));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnabledOnOs(OS.LINUX)
+public class CommandLineBatchTest {
+
+    @Test
+    public void executesAllCommandLinesInSubmissionOrder() throws Exception {
+        List<CommandLineUtils.StringStreamConsumer> outputs = new ArrayList<>();
+
+        CommandLineBatch.Summary summary;
+        try (CommandLineBatch batch = new CommandLineBatch(2)) {
+            for (int i = 0; i < 8; i++) {
+                CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+                outputs.add(out);
+                batch.submit(new Commandline("echo line" + i), out, null);
+            }
+            summary = batch.awaitAll();
+        }
+
+        assertTrue(summary.isSuccessful());
+        assertEquals(8, summary.getResults().size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(0, summary.getResults().get(i).getExitCode());
+            assertEquals("line" + i + System.lineSeparator(), outputs.get(i).getOutput());
+        }
+    }
+
+    @Test
+    public void reportsExitCodesAndFailures() throws Exception {
+        Commandline failing = new Commandline("sh");
+        failing.addArguments("-c", "exit 3");
+
+        Commandline missingDir = new Commandline("echo ok");
+        missingDir.setWorkingDirectory(new File("target/does-not-exist"));
+
+        CommandLineBatch.Summary summary;
+        try (CommandLineBatch batch = new CommandLineBatch(4)) {
+            batch.submit(new Commandline("echo ok"), null, null);
+            batch.submit(failing, null, null);
+            batch.submit(missingDir, null, null);
+            summary = batch.awaitAll();
+        }
+
+        assertFalse(summary.isSuccessful());
+        assertEquals(2, summary.getFailures().size());
+        assertTrue(summary.getResults().get(0).isSuccessful());
+        assertEquals(3, summary.getResults().get(1).getExitCode());
+        assertNotNull(summary.getResults().get(2).getExecutionException());
+    }
+
+    @Test
+    public void neverRunsMoreProcessesThanMaxConcurrency() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        // a process prints "end" before it exits, so the counter never overestimates the concurrency
+        StreamConsumer counter = line -> {
+            if ("start".equals(line)) {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            } else if ("end".equals(line)) {
+                running.decrementAndGet();
+            }
+        };
+
+        CommandLineBatch.Summary summary;
+        try (CommandLineBatch batch = new CommandLineBatch(2)) {
+            for (int i = 0; i < 6; i++) {
+                Commandline cl = new Commandline("sh");
+                cl.addArguments("-c", "echo start; sleep 0.3; echo end");
+                batch.submit(cl, counter, null);
+            }
+            summary = batch.awaitAll();
+        }
+
+        assertTrue(summary.isSuccessful());
+        assertEquals(2, peak.get());
+        assertEquals(0, running.get());
+    }
+
+    @Test
+    public void reportsRuntimeExceptionsThroughResult() throws Exception {
+        Commandline broken = new Commandline("echo ok") {
+            @Override
+            public String[] getEnvironmentVariables() {
+                throw new IllegalStateException("broken environment");
+            }
+        };
+
+        CommandLineBatch.Summary summary;
+        try (CommandLineBatch batch = new CommandLineBatch(1)) {
+            batch.submit(broken, null, null);
+            summary = batch.awaitAll();
+        }
+
+        assertFalse(summary.isSuccessful());
+        CommandLineException e = summary.getResults().get(0).getExecutionException();
+        assertNotNull(e);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    public void awaitAllAfterCloseThrowsCancellationException() throws Exception {
+        CommandLineBatch batch = new CommandLineBatch(1);
+        Commandline cl = new Commandline("sh");
+        cl.addArguments("-c", "sleep 10");
+        batch.submit(cl, null, null);
+        batch.close();
+
+        assertThrows(CancellationException.class, batch::awaitAll);
+    }
+
+    @Test
+    public void rejectsNonPositiveConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new CommandLineBatch(0));
+    }
+}
@@ -18,18 +18,26 @@
  */
 package org.apache.maven.shared.utils.cli;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.maven.shared.utils.Os;
+import org.apache.maven.shared.utils.StringUtils;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -89,6 +97,122 @@ public class CommandLineUtilsTest {
         assertCmdLineArgs(new String[] {"foo", " ' ", "bar"}, "foo \" ' \" bar");
     }
 
+    /**
+     * Compares the character scanning parser with the former {@link StringTokenizer} based implementation on random
+     * input made of quotes, escapes and spaces.
+     */
+    @Test
+    public void testTranslateCommandlineMatchesTokenizerBasedParser() throws Exception {
+        char[] alphabet = {'a', 'b', ' ', ' ', '\'', '"', '\\', '-'};
+        Random random = new Random(4711);
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(24) + 1];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String cmdLine = new String(chars);
+
+            String[] expected;
+            try {
+                expected = translateCommandlineWithTokenizer(cmdLine);
+            } catch (CommandLineException e) {
+                expected = null;
+            }
+
+            if (expected == null) {
+                try {
+                    CommandLineUtils.translateCommandline(cmdLine);
+                    fail("unbalanced quotes not detected in <" + cmdLine + ">");
+                } catch (CommandLineException e) {
+                    // expected
+                }
+            } else {
+                assertEquals(
+                        Arrays.asList(expected),
+                        Arrays.asList(CommandLineUtils.translateCommandline(cmdLine)),
+                        "<" + cmdLine + ">");
+            }
+        }
+    }
+
+    private static String[] translateCommandlineWithTokenizer(String toProcess) throws CommandLineException {
+        final int normal = 0;
+        final int inQuote = 1;
+        final int inDoubleQuote = 2;
+        boolean inEscape = false;
+        int state = normal;
+        final StringTokenizer tok = new StringTokenizer(toProcess, "\"' \\", true);
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        while (tok.hasMoreTokens()) {
+            String nextTok = tok.nextToken();
+            switch (state) {
+                case inQuote:
+                    if ("'".equals(nextTok)) {
+                        if (inEscape) {
+                            current.append(nextTok);
+                            inEscape = false;
+                        } else {
+                            state = normal;
+                        }
+                    } else {
+                        current.append(nextTok);
+                        inEscape = "\\".equals(nextTok);
+                    }
+                    break;
+                case inDoubleQuote:
+                    if ("\"".equals(nextTok)) {
+                        if (inEscape) {
+                            current.append(nextTok);
+                            inEscape = false;
+                        } else {
+                            state = normal;
+                        }
+                    } else {
+                        current.append(nextTok);
+                        inEscape = "\\".equals(nextTok);
+                    }
+                    break;
+                default:
+                    if ("'".equals(nextTok)) {
+                        if (inEscape) {
+                            inEscape = false;
+                            current.append(nextTok);
+                        } else {
+                            state = inQuote;
+                        }
+                    } else if ("\"".equals(nextTok)) {
+                        if (inEscape) {
+                            inEscape = false;
+                            current.append(nextTok);
+                        } else {
+                            state = inDoubleQuote;
+                        }
+                    } else if (" ".equals(nextTok)) {
+                        if (current.length() != 0) {
+                            tokens.add(current.toString());
+                            current.setLength(0);
+                        }
+                    } else {
+                        current.append(nextTok);
+                        inEscape = "\\".equals(nextTok);
+                    }
+                    break;
+            }
+        }
+
+        if (current.length() != 0) {
+            tokens.add(current.toString());
+        }
+
+        if ((state == inQuote) || (state == inDoubleQuote)) {
+            throw new CommandLineException("unbalanced quotes in " + toProcess);
+        }
+
+        return tokens.toArray(new String[0]);
+    }
+
     @Test
     public void givenADoubleQuoteMarkInArgumentWhenExecutingCodeThenCommandLineExceptionIsThrown() {
         try {
@@ -107,6 +231,31 @@ public class CommandLineUtilsTest {
         assertEquals(0, p.exitValue());
     }
 
+    @Test
+    public void overriddenEnvironmentAndArgumentsAreExecuted() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX)) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh") {
+            @Override
+            public String[] getEnvironmentVariables() {
+                return new String[] {"INJECTED=from override"};
+            }
+
+            @Override
+            public String[] getArguments(boolean mask) {
+                return new String[] {"-c", "echo \"$INJECTED\""};
+            }
+        };
+        cl.addArguments("-c", "echo ignored");
+
+        CommandLineUtils.StringStreamConsumer stdout = new CommandLineUtils.StringStreamConsumer();
+        assertEquals(0, CommandLineUtils.executeCommandLine(cl, stdout, null));
+        assertEquals("from override" + System.lineSeparator(), stdout.getOutput());
+        assertTrue(cl.toString().contains("$INJECTED"), cl.toString());
+    }
+
     /**
      * A process that writes more output than fits in the OS pipe buffer is still being drained by the stream pumpers
      * when {@code waitFor()} returns. Closing the process streams unconditionally at that point (as was attempted to
@@ -143,6 +292,310 @@ public class CommandLineUtilsTest {
         }
     }
 
+    @Test
+    public void executeCommandLineForResultReportsStreamStatistics() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX)) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        cl.addArguments("-c", "seq 1 1000; echo error >&2; exit 2");
+
+        CommandLineResult result = CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 0);
+
+        assertEquals(2, result.getExitCode());
+        assertEquals(1000, result.getStdoutLines());
+        assertEquals(3893, result.getStdoutBytes());
+        assertEquals(1, result.getStderrLines());
+        assertEquals(6, result.getStderrBytes());
+        assertTrue(result.getTimeToFirstOutputMillis() >= 0);
+        assertTrue(result.getWallTimeMillis() >= result.getTimeToFirstOutputMillis());
+        assertTrue(result.getEofGraceWaitMillis() <= result.getWallTimeMillis());
+    }
+
+    @Test
+    public void executeCommandLineForResultWithoutOutput() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX)) {
+            return;
+        }
+
+        CommandLineResult result =
+                CommandLineUtils.executeCommandLineForResult(new Commandline("true"), null, null, null, 0);
+
+        assertEquals(0, result.getExitCode());
+        assertEquals(-1, result.getTimeToFirstOutputMillis());
+        assertEquals(0, result.getStdoutBytes());
+        assertEquals(0, result.getStderrLines());
+    }
+
+    /**
+     * A background child inheriting the output pipes keeps them open after the process exited. Once no known
+     * descendant is alive the blocked pumpers are stuck, and EOF must be forced without waiting for the whole grace
+     * period, while the output read so far is still delivered. Requires {@code ProcessHandle}, i.e. Java 9+.
+     */
+    @Test
+    public void stuckStreamsOfExitedProcessAreClosedEarly() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX) || !ProcessHandles.isAvailable()) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        // the subshell orphans the background child at once, while the pumpers are left blocked reading
+        cl.addArguments("-c", "echo started; (sleep 2 &); sleep 0.3");
+
+        CommandLineExecutionOptions options = new CommandLineExecutionOptions();
+        options.setProcessTreeAware(true);
+
+        long fallbacks = CommandLineUtils.getStreamEofFallbackCount();
+        CommandLineUtils.StringStreamConsumer stdout = new CommandLineUtils.StringStreamConsumer();
+        CommandLineResult result =
+                CommandLineUtils.executeCommandLineForResult(cl, null, stdout, null, 0, null, options);
+
+        assertEquals(0, result.getExitCode());
+        assertEquals("started" + System.lineSeparator(), stdout.getOutput());
+        assertTrue(result.isStreamEofForced(), result.toString());
+        assertTrue(CommandLineUtils.getStreamEofFallbackCount() > fallbacks);
+    }
+
+    /**
+     * The CPU time of a command run by a nested shell is only accounted for when the process tree is tracked.
+     * Requires {@code ProcessHandle}, i.e. Java 9+.
+     */
+    @Test
+    public void cpuTimeOfDescendantsIsAccountedFor() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX) || !ProcessHandles.isAvailable()) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        cl.addArguments("-c", "sh -c 'i=0; while [ $i -lt 1000000 ]; do i=$((i+1)); done'; echo done");
+
+        CommandLineExecutionOptions options = new CommandLineExecutionOptions();
+        options.setProcessTreeAware(true);
+        options.setCpuTimeSampling(true);
+
+        CommandLineResult result = CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 0, null, options);
+
+        assertEquals(0, result.getExitCode());
+        assertTrue(result.getWallTimeMillis() > 200, result.toString());
+        assertTrue(result.getCpuTimeMillis() > result.getWallTimeMillis() / 4, result.toString());
+
+        // not sampled unless asked for
+        result = CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 0, null, null);
+        assertEquals(-1, result.getCpuTimeMillis(), result.toString());
+    }
+
+    @Test
+    public void streamEofGracePeriodIsConfigurable() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX)) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        // the pumpers are blocked reading when the shell exits
+        cl.addArguments("-c", "(sleep 2 &); sleep 0.3");
+
+        CommandLineExecutionOptions options = new CommandLineExecutionOptions();
+        options.setStreamEofGracePeriodMillis(200);
+
+        CommandLineResult result = CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 0, null, options);
+
+        assertEquals(0, result.getExitCode());
+        assertTrue(result.isStreamEofForced());
+        assertTrue(result.getEofGraceWaitMillis() >= 200, result.toString());
+    }
+
+    @Test
+    public void timeoutTerminatesProcessTree() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX) || !ProcessHandles.isAvailable()) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        cl.addArguments("-c", "sleep 30 & sleep 30");
+
+        ProcessTerminationPolicy policy = new ProcessTerminationPolicy();
+        policy.setProcessTree(true);
+        policy.setGracePeriodMillis(2000);
+        CommandLineExecutionOptions options = new CommandLineExecutionOptions();
+        options.setTerminationPolicy(policy);
+        long start = System.nanoTime();
+        CommandLineTimeOutException e = assertThrows(
+                CommandLineTimeOutException.class,
+                () -> CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 1, null, options));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the command line runs in a shell, the tree contains a shell more than the command itself
+        List<ProcessTerminationPolicy.TerminatedProcess> terminated = e.getTerminatedProcesses();
+        assertFalse(terminated.get(0).isDescendant(), terminated.toString());
+        assertEquals(2, countSleeps(terminated), terminated.toString());
+        for (ProcessTerminationPolicy.TerminatedProcess process : terminated) {
+            assertTrue(process.getPid() > 0, terminated.toString());
+            assertFalse(process.isForcibly(), terminated.toString());
+        }
+        assertTrue(elapsedMillis < 1000 + policy.getGracePeriodMillis(), terminated.toString());
+    }
+
+    @Test
+    public void timeoutTerminatesOnlyForkedProcessByDefault() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX)) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        cl.addArguments("-c", "sleep 30 & sleep 30");
+
+        CommandLineTimeOutException e = assertThrows(
+                CommandLineTimeOutException.class,
+                () -> CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 1));
+
+        List<ProcessTerminationPolicy.TerminatedProcess> terminated = e.getTerminatedProcesses();
+        assertEquals(1, terminated.size(), terminated.toString());
+        assertFalse(terminated.get(0).isDescendant());
+        assertFalse(terminated.get(0).isForcibly());
+    }
+
+    @Test
+    public void interruptTerminatesProcessTreeGracefully() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX) || !ProcessHandles.isAvailable()) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        cl.addArguments("-c", "sleep 30 & sleep 30");
+
+        ProcessTerminationPolicy policy = new ProcessTerminationPolicy();
+        policy.setProcessTree(true);
+        policy.setGracePeriodMillis(2000);
+        CommandLineExecutionOptions options = new CommandLineExecutionOptions();
+        options.setTerminationPolicy(policy);
+
+        Thread caller = Thread.currentThread();
+        Thread interrupter = new Thread(() -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                return;
+            }
+            caller.interrupt();
+        });
+        interrupter.start();
+
+        CommandLineTimeOutException e;
+        try {
+            e = assertThrows(
+                    CommandLineTimeOutException.class,
+                    () -> CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 0, null, options));
+        } finally {
+            interrupter.join();
+            // the interrupt is restored, once the processes were given their grace period
+            assertTrue(Thread.interrupted());
+        }
+
+        List<ProcessTerminationPolicy.TerminatedProcess> terminated = e.getTerminatedProcesses();
+        assertEquals(2, countSleeps(terminated), terminated.toString());
+        for (ProcessTerminationPolicy.TerminatedProcess process : terminated) {
+            assertFalse(process.isForcibly(), terminated.toString());
+        }
+    }
+
+    @Test
+    public void timeoutKillsProcessesIgnoringTermination() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX) || !ProcessHandles.isAvailable()) {
+            return;
+        }
+
+        Commandline cl = new Commandline("sh");
+        cl.addArguments("-c", "trap '' TERM; sleep 30");
+
+        ProcessTerminationPolicy policy = new ProcessTerminationPolicy();
+        policy.setProcessTree(true);
+        policy.setGracePeriodMillis(200);
+        CommandLineExecutionOptions options = new CommandLineExecutionOptions();
+        options.setTerminationPolicy(policy);
+        CommandLineTimeOutException e = assertThrows(
+                CommandLineTimeOutException.class,
+                () -> CommandLineUtils.executeCommandLineForResult(cl, null, null, null, 1, null, options));
+
+        List<ProcessTerminationPolicy.TerminatedProcess> terminated = e.getTerminatedProcesses();
+        assertEquals(1, countSleeps(terminated), terminated.toString());
+        for (ProcessTerminationPolicy.TerminatedProcess process : terminated.subList(1, terminated.size())) {
+            assertTrue(process.isForcibly(), terminated.toString());
+        }
+    }
+
+    private static int countSleeps(List<ProcessTerminationPolicy.TerminatedProcess> terminated) {
+        int sleeps = 0;
+        for (ProcessTerminationPolicy.TerminatedProcess process : terminated) {
+            if (process.isDescendant() && String.valueOf(process.getCommand()).endsWith("sleep")) {
+                sleeps++;
+            }
+        }
+        return sleeps;
+    }
+
+    @Test
+    public void argumentsAreSpilledIntoArgumentFileAboveThreshold() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX)) {
+            return;
+        }
+
+        Commandline cl = new Commandline("echo");
+        cl.addArguments("first", "second");
+        cl.setArgumentFileThreshold(10);
+
+        CommandLineUtils.StringStreamConsumer stdout = new CommandLineUtils.StringStreamConsumer();
+        assertEquals(0, CommandLineUtils.executeCommandLine(cl, stdout, null));
+
+        String output = stdout.getOutput().trim();
+        assertTrue(output.startsWith("@"), output);
+        assertFalse(new File(output.substring(1)).exists(), "argument file must be deleted");
+
+        cl.setArgumentFileThreshold(100);
+        stdout = new CommandLineUtils.StringStreamConsumer();
+        assertEquals(0, CommandLineUtils.executeCommandLine(cl, stdout, null));
+        assertEquals("first second", stdout.getOutput().trim());
+    }
+
+    @Test
+    public void launcherOptionsAreNotSpilledIntoArgumentFile() throws Exception {
+        if (!Os.isFamily(Os.FAMILY_UNIX)) {
+            return;
+        }
+
+        Commandline cl = new Commandline("echo");
+        cl.addArguments("-J-Xmx64m", "first", "-J-Dkey=value", "second");
+        cl.setArgumentFileThreshold(10);
+
+        CommandLineUtils.StringStreamConsumer stdout = new CommandLineUtils.StringStreamConsumer();
+        assertEquals(0, CommandLineUtils.executeCommandLine(cl, stdout, null));
+
+        String output = stdout.getOutput().trim();
+        assertTrue(output.startsWith("-J-Xmx64m -J-Dkey=value @"), output);
+        assertFalse(new File(output.substring(output.indexOf('@') + 1)).exists(), "argument file must be deleted");
+    }
+
+    @Test
+    public void argumentFileIsUnderstoodByJava() throws Exception {
+        String javaHome = System.getProperty("java.home");
+        if (System.getProperty("java.specification.version").startsWith("1.")) {
+            return;
+        }
+
+        Commandline cl = new Commandline();
+        cl.setExecutable(new File(javaHome, "bin/java").getAbsolutePath());
+        cl.addArguments(
+                "-Dargfile.test=with space \"quoted\" back\\slash\ttab", "-XshowSettings:properties", "-version");
+        cl.setArgumentFileThreshold(1);
+
+        CommandLineUtils.StringStreamConsumer stderr = new CommandLineUtils.StringStreamConsumer();
+        assertEquals(0, CommandLineUtils.executeCommandLine(cl, null, stderr));
+
+        assertTrue(
+                stderr.getOutput().contains("argfile.test = with space \"quoted\" back\\slash\ttab"),
+                stderr.getOutput());
+    }
+
     @Test
     public void givenASingleQuoteMarkInArgumentWhenTranslatingToCmdLineArgsThenTheQuotationMarkIsNotEscaped()
             throws Exception {
@@ -228,4 +681,48 @@ public class CommandLineUtilsTest {
         assertNotNull(environmentVariables);
         assertFalse(Arrays.asList(environmentVariables).contains("TEST_SHARED_ENV=TestValue"));
     }
+
+    @Test
+    public void environmentVariablesReflectChangesAfterFirstComputation() {
+
+        Commandline commandline = new Commandline();
+
+        String[] before = commandline.getEnvironmentVariables();
+        assertFalse(Arrays.asList(before).contains("TEST_ADDED_ENV=1"));
+
+        commandline.addEnvironment("TEST_ADDED_ENV", "1");
+        String[] after = commandline.getEnvironmentVariables();
+        assertTrue(Arrays.asList(after).contains("TEST_ADDED_ENV=1"));
+        assertTrue(Arrays.asList(after).contains("TEST_SHARED_ENV=TestValue"));
+
+        commandline.setShellEnvironmentInherited(false);
+        assertEquals(Arrays.asList("TEST_ADDED_ENV=1"), Arrays.asList(commandline.getEnvironmentVariables()));
+    }
+
+    @Test
+    public void environmentVariablesAreReturnedAsCopy() {
+
+        Commandline commandline = new Commandline();
+
+        String[] environmentVariables = commandline.getEnvironmentVariables();
+        environmentVariables[0] = "MODIFIED=1";
+
+        assertFalse(Arrays.asList(commandline.getEnvironmentVariables()).contains("MODIFIED=1"));
+        assertFalse(Arrays.asList(new Commandline().getEnvironmentVariables()).contains("MODIFIED=1"));
+    }
+
+    @Test
+    public void toStringQuotesLikeQuoteAndEscape() {
+        String[] line = {"plain", "with space", "with\"quote", "\"already quoted\"", "\"", "", "a \"b\" c", null};
+
+        StringBuilder expected = new StringBuilder();
+        for (String part : line) {
+            if (expected.length() > 0) {
+                expected.append(' ');
+            }
+            expected.append(StringUtils.quoteAndEscape(part, '"'));
+        }
+
+        assertEquals(expected.toString(), CommandLineUtils.toString(line));
+    }
 }
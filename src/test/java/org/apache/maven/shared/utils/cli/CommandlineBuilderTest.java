@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandlineBuilderTest {
+
+    @Test
+    public void buildsSameCommandlineAsMutableOne() throws Exception {
+        Commandline mutable = new Commandline();
+        mutable.setExecutable("echo");
+        mutable.addArguments("a", "b c");
+        Arg secret = mutable.createArg();
+        secret.setValue("secret");
+        secret.setMask(true);
+        mutable.createArg().setLine("d 'e f'");
+
+        Commandline built = new Commandline.Builder()
+                .executable("echo")
+                .addArguments("a", "b c")
+                .addMaskedArgument("secret")
+                .addLine("d 'e f'")
+                .build();
+
+        assertArrayEquals(mutable.getCommandline(), built.getCommandline());
+        assertArrayEquals(mutable.getArguments(true), built.getArguments(true));
+        assertEquals(mutable.toString(), built.toString());
+        assertTrue(built.toString().contains("*****"));
+    }
+
+    @Test
+    public void builtCommandlineIsImmutable() {
+        Commandline built = new Commandline.Builder().executable("echo").build();
+
+        assertThrows(UnsupportedOperationException.class, () -> built.createArg());
+        assertThrows(UnsupportedOperationException.class, () -> built.addArguments("a"));
+        assertThrows(UnsupportedOperationException.class, () -> built.addEnvironment("A", "B"));
+        assertThrows(UnsupportedOperationException.class, () -> built.setExecutable("ls"));
+        assertThrows(UnsupportedOperationException.class, () -> built.setWorkingDirectory(new File(".")));
+        assertThrows(UnsupportedOperationException.class, built::clearArgs);
+        assertThrows(UnsupportedOperationException.class, () -> built.setDirectExecution(true));
+    }
+
+    @Test
+    public void builtArgumentsCannotBeModifiedThroughGetters() {
+        Commandline built = new Commandline.Builder().addArguments("a", "b").build();
+
+        built.getArguments()[0] = "x";
+
+        assertArrayEquals(new String[] {"a", "b"}, built.getArguments());
+    }
+
+    @Test
+    public void builderCanBeReused() {
+        Commandline.Builder builder = new Commandline.Builder().executable("echo").addArgument("a");
+        Commandline first = builder.build();
+
+        builder.addArgument("b").addEnvironment("BUILDER_TEST", "1");
+        Commandline second = builder.build();
+
+        assertArrayEquals(new String[] {"a"}, first.getArguments());
+        assertArrayEquals(new String[] {"a", "b"}, second.getArguments());
+        assertTrue(!Arrays.asList(first.getEnvironmentVariables()).contains("BUILDER_TEST=1"));
+        assertTrue(Arrays.asList(second.getEnvironmentVariables()).contains("BUILDER_TEST=1"));
+    }
+
+    @Test
+    public void environmentOverlaysSystemEnvironment() {
+        Commandline built = new Commandline.Builder()
+                .addEnvironment("BUILDER_TEST", "1")
+                .shellEnvironmentInherited(false)
+                .build();
+
+        assertArrayEquals(new String[] {"BUILDER_TEST=1"}, built.getEnvironmentVariables());
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void builtCommandlineExecutes() throws Exception {
+        for (boolean directExecution : new boolean[] {false, true}) {
+            Commandline built = new Commandline.Builder()
+                    .executable("sh")
+                    .addArguments("-c", "echo $BUILDER_TEST $0", "it's")
+                    .addEnvironment("BUILDER_TEST", "value")
+                    .directExecution(directExecution)
+                    .build();
+
+            CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+            int exitCode = CommandLineUtils.executeCommandLine(built, out, null);
+
+            assertEquals(0, exitCode);
+            assertEquals("value it's" + System.lineSeparator(), out.getOutput());
+        }
+    }
+}
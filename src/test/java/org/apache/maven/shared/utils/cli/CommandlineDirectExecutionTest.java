@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Parity tests for {@link Commandline#setDirectExecution(boolean)}: each command line is executed through the shell
+ * and directly, and both executions must yield the same exit code, stdout and stderr. The documented differences of
+ * direct execution are covered by the tests named accordingly.
+ */
+@DisabledOnOs(OS.WINDOWS)
+public class CommandlineDirectExecutionTest {
+
+    @TempDir
+    private File tempDir;
+
+    @Test
+    public void plainArguments() throws Exception {
+        assertParity("echo", "foo", "bar");
+    }
+
+    @Test
+    public void argumentsWithSpacesAndQuotes() throws Exception {
+        assertParity("echo", "with space", "it's", "\"double\"", "  leading and trailing  ");
+    }
+
+    @Test
+    public void argumentsWithShellMetacharacters() throws Exception {
+        assertParity("echo", "$HOME", "`id`", "$(id)", "*", "a;b", "a&&b", "a|b", "a>b", "~", "\\", "!");
+    }
+
+    @Test
+    public void emptyArgument() throws Exception {
+        assertParity("printf", "[%s]", "", "x");
+    }
+
+    @Test
+    public void exitCode() throws Exception {
+        assertParity("sh", "-c", "echo out; echo err >&2; exit 7");
+    }
+
+    @Test
+    public void workingDirectory() throws Exception {
+        Commandline shell = newCommandline(false, "pwd");
+        shell.setWorkingDirectory(tempDir);
+        Commandline direct = newCommandline(true, "pwd");
+        direct.setWorkingDirectory(tempDir);
+
+        assertParity(shell, direct);
+    }
+
+    @Test
+    public void environment() throws Exception {
+        Commandline shell = newCommandline(false, "sh", "-c", "echo $PARITY_TEST_ENV");
+        shell.addEnvironment("PARITY_TEST_ENV", "value with 'quotes'");
+        Commandline direct = newCommandline(true, "sh", "-c", "echo $PARITY_TEST_ENV");
+        direct.addEnvironment("PARITY_TEST_ENV", "value with 'quotes'");
+
+        assertParity(shell, direct);
+    }
+
+    @Test
+    public void toStringShowsUnquotedExecutable() {
+        Commandline direct = newCommandline(true, "echo", "a b");
+
+        assertEquals("echo \"a b\"", direct.toString());
+    }
+
+    @Test
+    public void differenceMissingExecutableFailsExecute() throws Exception {
+        Commandline shell = newCommandline(false, "does-not-exist-parity-test");
+        assertEquals(127, CommandLineUtils.executeCommandLine(shell, null, null));
+
+        Commandline direct = newCommandline(true, "does-not-exist-parity-test");
+        assertThrows(CommandLineException.class, () -> CommandLineUtils.executeCommandLine(direct, null, null));
+    }
+
+    private static Commandline newCommandline(boolean directExecution, String executable, String... args) {
+        Commandline cl = new Commandline();
+        cl.setExecutable(executable);
+        cl.addArguments(args);
+        cl.setDirectExecution(directExecution);
+        return cl;
+    }
+
+    private static void assertParity(String executable, String... args) throws Exception {
+        assertParity(newCommandline(false, executable, args), newCommandline(true, executable, args));
+    }
+
+    private static void assertParity(Commandline shell, Commandline direct) throws Exception {
+        CommandLineUtils.StringStreamConsumer shellOut = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer shellErr = new CommandLineUtils.StringStreamConsumer();
+        int shellExitCode = CommandLineUtils.executeCommandLine(shell, shellOut, shellErr);
+
+        CommandLineUtils.StringStreamConsumer directOut = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer directErr = new CommandLineUtils.StringStreamConsumer();
+        int directExitCode = CommandLineUtils.executeCommandLine(direct, directOut, directErr);
+
+        assertEquals(shellExitCode, directExitCode, "exit code");
+        assertEquals(shellOut.getOutput(), directOut.getOutput(), "stdout");
+        assertEquals(shellErr.getOutput(), directErr.getOutput(), "stderr");
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link CommandLineExecutionOptions#setStreamPolling(boolean)} against the default pumping threads.
+ */
+@DisabledOnOs(OS.WINDOWS)
+public class StreamPollerTest {
+
+    @Test
+    public void linesAreSplitAsWithPumpingThreads() throws Exception {
+        assertParity("printf 'a\\nb\\r\\nc\\rd\\n\\n\\ne'");
+        assertParity("printf 'no line terminator'");
+        assertParity("printf ''");
+        assertParity("printf 'x\\r'; printf '\\ny'");
+        assertParity("seq 1 20000");
+        assertParity("echo out; echo err >&2; exit 3");
+    }
+
+    @Test
+    public void multiByteCharactersSplitAcrossReadsAreDecoded() throws Exception {
+        // the first bytes of the characters are written before a pause, so that they are polled separately
+        assertParity("printf '\\303'; sleep 0.1; printf '\\251\\342\\202'; sleep 0.1; printf '\\254\\n'");
+    }
+
+    @Test
+    public void consumerFailureIsReported() throws Exception {
+        Commandline cl = newCommandline("echo a; echo b");
+
+        List<String> lines = new ArrayList<>();
+        StreamConsumer failing = line -> {
+            lines.add(line);
+            throw new IllegalStateException("consumer failed");
+        };
+
+        CommandLineException e = assertThrows(
+                CommandLineException.class,
+                () -> CommandLineUtils.executeCommandLineForResult(cl, null, failing, null, 0, null, polling()));
+        assertEquals("Failure processing stdout.", e.getMessage());
+        assertEquals("consumer failed", e.getCause().getMessage());
+        // later lines are not passed to a failed consumer
+        assertEquals(1, lines.size());
+    }
+
+    @Test
+    public void stuckStreamsAreDetected() throws Exception {
+        if (!ProcessHandles.isAvailable()) {
+            return;
+        }
+
+        CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+        CommandLineResult result = CommandLineUtils.executeCommandLineForResult(
+                newCommandline("echo started; sleep 4 &"), null, out, null, 0, null, polling());
+
+        assertEquals("started" + System.lineSeparator(), out.getOutput());
+        assertTrue(result.getEofGraceWaitMillis() < 2000, result.toString());
+    }
+
+    @Test
+    public void manyConcurrentProcesses() throws Exception {
+        int processes = 64;
+        try (CommandLineBatch batch = new CommandLineBatch(processes)) {
+            batch.setExecutionOptions(polling());
+
+            List<CommandLineUtils.StringStreamConsumer> outputs = new ArrayList<>();
+            for (int i = 0; i < processes; i++) {
+                CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+                outputs.add(out);
+                batch.submit(newCommandline("sleep 0.2; seq 1 " + (1000 + i)), out, null);
+            }
+
+            assertTrue(batch.awaitAll().isSuccessful());
+            for (int i = 0; i < processes; i++) {
+                String output = outputs.get(i).getOutput();
+                assertTrue(output.endsWith((1000 + i) + System.lineSeparator()), output);
+                assertEquals(1000 + i, output.split(System.lineSeparator()).length);
+            }
+        }
+    }
+
+    @Test
+    public void rejectedDrainDoesNotBlockThePoller() throws Exception {
+        Executor rejecting = task -> {
+            throw new RejectedExecutionException("closed");
+        };
+
+        // a stream held open, as by a left-over child of an exited process
+        PipedOutputStream held = new PipedOutputStream();
+        StreamPumper heldPumper = new StreamPumper(new PipedInputStream(held), null);
+        StreamPoller.getInstance().register(new ExitedProcess(), rejecting, heldPumper);
+
+        // whatever poller thread they are assigned to, the streams of the next processes are drained right away
+        List<StreamPumper> pumpers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            StreamPumper pumper = new StreamPumper(new ByteArrayInputStream("line\n".getBytes()), null);
+            pumpers.add(pumper);
+            StreamPoller.getInstance().register(new ExitedProcess(), rejecting, pumper);
+        }
+        for (StreamPumper pumper : pumpers) {
+            assertTrue(pumper.waitUntilDone(2000));
+            assertEquals(1, pumper.getLineCount());
+        }
+
+        assertFalse(heldPumper.isDone());
+        held.write("last\n".getBytes());
+        held.close();
+        assertTrue(heldPumper.waitUntilDone(2000));
+        assertEquals(1, heldPumper.getLineCount());
+    }
+
+    private static void assertParity(String script) throws Exception {
+        CommandLineUtils.StringStreamConsumer threadOut = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer threadErr = new CommandLineUtils.StringStreamConsumer();
+        CommandLineResult threadResult = CommandLineUtils.executeCommandLineForResult(
+                newCommandline(script), null, threadOut, threadErr, 0, StandardCharsets.UTF_8, null);
+
+        CommandLineUtils.StringStreamConsumer pollOut = new CommandLineUtils.StringStreamConsumer();
+        CommandLineUtils.StringStreamConsumer pollErr = new CommandLineUtils.StringStreamConsumer();
+        CommandLineResult pollResult = CommandLineUtils.executeCommandLineForResult(
+                newCommandline(script), null, pollOut, pollErr, 0, StandardCharsets.UTF_8, polling());
+
+        assertEquals(threadResult.getExitCode(), pollResult.getExitCode(), script);
+        assertEquals(threadOut.getOutput(), pollOut.getOutput(), script);
+        assertEquals(threadErr.getOutput(), pollErr.getOutput(), script);
+        assertEquals(threadResult.getStdoutLines(), pollResult.getStdoutLines(), script);
+        assertEquals(threadResult.getStdoutBytes(), pollResult.getStdoutBytes(), script);
+    }
+
+    private static Commandline newCommandline(String script) {
+        Commandline cl = new Commandline();
+        cl.setExecutable("sh");
+        cl.addArguments("-c", script);
+        return cl;
+    }
+
+    private static CommandLineExecutionOptions polling() {
+        CommandLineExecutionOptions options = new CommandLineExecutionOptions();
+        options.setStreamPolling(true);
+        return options;
+    }
+
+    /**
+     * A process which already exited.
+     */
+    private static final class ExitedProcess extends Process {
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return false;
+        }
+
+        @Override
+        public void destroy() {}
+    }
+}
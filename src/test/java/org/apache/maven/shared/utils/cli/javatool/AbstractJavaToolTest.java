@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.cli.javatool;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.shared.utils.cli.CapturingStreamConsumer;
+import org.apache.maven.shared.utils.cli.CommandLineTimeOutException;
+import org.apache.maven.shared.utils.cli.Commandline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.condition.OS;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AbstractJavaToolTest {
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void toolProviderRunsInProcess() throws Exception {
+        JavaToolResult result = execute(true, null, "--version");
+
+        assertNull(result.getExecutionException());
+        assertEquals(0, result.getExitCode());
+        // only set when forked
+        assertNull(result.getExecutionResult());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void toolProviderReportsExitCodeAndOutput() throws Exception {
+        List<String> err = new ArrayList<>();
+        AbstractJavaToolRequest request = new AbstractJavaToolRequest();
+        request.setSystemErrorStreamConsumer(err::add);
+
+        JavaToolResult result = newJar(true, null, "--no-such-option").execute(request);
+
+        assertTrue(result.getExitCode() != 0);
+        assertTrue(!err.isEmpty());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void toolProviderFallsBackToForkWithWorkingDirectory() throws Exception {
+        JavaToolResult result = execute(true, new File("."), "--version");
+
+        assertEquals(0, result.getExitCode());
+        assertNotNull(result.getExecutionResult());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void toolProviderFallsBackToForkWithLauncherOptions() throws Exception {
+        JavaToolResult result = execute(true, null, "-J-Xmx64m", "--version");
+
+        assertNull(result.getExecutionException());
+        assertEquals(0, result.getExitCode());
+        assertNotNull(result.getExecutionResult());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void workerFallsBackToForkWithLauncherOptions() throws Exception {
+        AbstractJavaTool<JavaToolRequest> jar = newJar(false, null, "-J-Xmx64m", "--version");
+        jar.setWorkerPoolSize(1);
+
+        JavaToolResult result = jar.execute(new AbstractJavaToolRequest());
+
+        assertEquals(0, result.getExitCode());
+        assertNotNull(result.getExecutionResult());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void workerRunsToolRepeatedly() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            List<String> out = new ArrayList<>();
+            AbstractJavaToolRequest request = new AbstractJavaToolRequest();
+            request.setSystemOutStreamConsumer(out::add);
+            AbstractJavaTool<JavaToolRequest> jar = newJar(false, null, "--version");
+            jar.setWorkerPoolSize(1);
+            jar.setWorkerMaxRuns(2);
+
+            JavaToolResult result = jar.execute(request);
+
+            assertNull(result.getExecutionException());
+            assertEquals(0, result.getExitCode());
+            assertEquals(1, out.size());
+            assertTrue(out.get(0).startsWith("jar "));
+            // only set when forked
+            assertNull(result.getExecutionResult());
+        }
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void workerReportsExitCodeAndOutput() throws Exception {
+        List<String> err = new ArrayList<>();
+        AbstractJavaToolRequest request = new AbstractJavaToolRequest();
+        request.setSystemErrorStreamConsumer(err::add);
+        AbstractJavaTool<JavaToolRequest> jar = newJar(false, new File("."), "--no-such-option");
+        jar.setWorkerPoolSize(1);
+
+        JavaToolResult result = jar.execute(request);
+
+        assertTrue(result.getExitCode() != 0);
+        assertTrue(!err.isEmpty());
+        assertNull(result.getExecutionResult());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    @EnabledOnOs(OS.LINUX)
+    public void workerIsKilledOnTimeout() throws Exception {
+        // opening a named pipe blocks until a writer opens it
+        File fifo = new File(Files.createTempDirectory("worker").toFile(), "fifo");
+        assertEquals(0, new ProcessBuilder("mkfifo", fifo.getPath()).start().waitFor());
+        AbstractJavaTool<JavaToolRequest> jar = newJar(false, null, "--list", "--file", fifo.getPath());
+        jar.setWorkerPoolSize(1);
+        jar.setTimeoutInSeconds(1);
+
+        JavaToolResult result = jar.execute(new AbstractJavaToolRequest());
+
+        assertTrue(result.getExecutionException() instanceof CommandLineTimeOutException);
+        assertEquals(Integer.MIN_VALUE, result.getExitCode());
+
+        // the killed worker is replaced
+        jar = newJar(false, null, "--version");
+        jar.setWorkerPoolSize(1);
+        result = jar.execute(new AbstractJavaToolRequest());
+        assertNull(result.getExecutionException());
+        assertEquals(0, result.getExitCode());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_9)
+    public void idleWorkersAreStopped() throws Exception {
+        AbstractJavaTool<JavaToolRequest> jar = newJar(false, null, "--version");
+        jar.setWorkerPoolSize(1);
+        assertEquals(0, jar.execute(new AbstractJavaToolRequest()).getExitCode());
+        assertTrue(JavaToolWorkerPool.getPoolCount() > 0);
+
+        JavaToolWorkerPool.evictIdleWorkers(0);
+
+        assertEquals(0, JavaToolWorkerPool.getPoolCount());
+    }
+
+    @Test
+    public void workerFallsBackToForkWithoutToolProvider() throws Exception {
+        AbstractJavaTool<JavaToolRequest> java = new AbstractJavaTool<JavaToolRequest>("java") {
+            @Override
+            protected Commandline createCommandLine(JavaToolRequest request, String javaToolFileLocation) {
+                Commandline cli = new Commandline();
+                cli.setExecutable(javaToolFileLocation);
+                cli.addArguments("-version");
+                return cli;
+            }
+        };
+        java.setWorkerPoolSize(1);
+
+        JavaToolResult result = java.execute(new AbstractJavaToolRequest());
+
+        assertEquals(0, result.getExitCode());
+        assertNotNull(result.getExecutionResult());
+    }
+
+    @Test
+    public void commandLineIsCreatedOnceWhenFallingBackToFork() throws Exception {
+        List<String> locations = new ArrayList<>();
+        AbstractJavaTool<JavaToolRequest> java = new AbstractJavaTool<JavaToolRequest>("java") {
+            @Override
+            protected Commandline createCommandLine(JavaToolRequest request, String javaToolFileLocation) {
+                locations.add(javaToolFileLocation);
+                Commandline cli = new Commandline();
+                cli.setExecutable(javaToolFileLocation);
+                cli.addArguments("-version");
+                return cli;
+            }
+        };
+        java.setUseToolProvider(true);
+        java.setWorkerPoolSize(1);
+
+        JavaToolResult result = java.execute(new AbstractJavaToolRequest());
+
+        assertEquals(0, result.getExitCode());
+        assertEquals(Arrays.asList("java"), locations);
+        // forked with the executable found
+        String commandLine = result.getCommandline().toString();
+        assertTrue(commandLine.contains(java.findJavaToolExecutable()), commandLine);
+    }
+
+    @Test
+    public void capturedOutputIsExposedInResult() throws Exception {
+        CapturingStreamConsumer err = CapturingStreamConsumer.counting();
+        AbstractJavaToolRequest request = new AbstractJavaToolRequest();
+        request.setSystemErrorStreamConsumer(err);
+
+        JavaToolResult result = execute(false, null, request, "--no-such-option");
+
+        assertNull(result.getSystemOutCapture());
+        assertSame(err, result.getSystemErrorCapture());
+        assertTrue(err.getLineCount() > 0);
+    }
+
+    @Test
+    public void toolchainExecutableIsNotCachedAcrossInstances() {
+        FakeToolchain toolchain = new FakeToolchain();
+
+        toolchain.tool = "/first/jar";
+        AbstractJavaTool<JavaToolRequest> jar = newJar(false, null);
+        jar.setToolchain(toolchain);
+        assertEquals("/first/jar", jar.findJavaToolExecutable());
+
+        toolchain.tool = "/second/jar";
+        jar = newJar(false, null);
+        jar.setToolchain(toolchain);
+        assertEquals("/second/jar", jar.findJavaToolExecutable());
+    }
+
+    @Test
+    public void streamConsumerWriterSplitsLines() throws Exception {
+        List<String> lines = new ArrayList<>();
+        StreamConsumerWriter writer = new StreamConsumerWriter(lines::add);
+
+        writer.write("a\nb\r\nc");
+        writer.write("\rd\n\ne");
+        writer.close();
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "", "e"), lines);
+    }
+
+    private static JavaToolResult execute(boolean useToolProvider, File workingDirectory, String... args)
+            throws JavaToolException {
+        return execute(useToolProvider, workingDirectory, new AbstractJavaToolRequest(), args);
+    }
+
+    private static JavaToolResult execute(
+            boolean useToolProvider, File workingDirectory, JavaToolRequest request, String... args)
+            throws JavaToolException {
+        return newJar(useToolProvider, workingDirectory, args).execute(request);
+    }
+
+    private static AbstractJavaTool<JavaToolRequest> newJar(
+            boolean useToolProvider, File workingDirectory, String... args) {
+        AbstractJavaTool<JavaToolRequest> jar = new AbstractJavaTool<JavaToolRequest>("jar") {
+            @Override
+            protected Commandline createCommandLine(JavaToolRequest request, String javaToolFileLocation) {
+                Commandline cli = new Commandline();
+                cli.setExecutable(javaToolFileLocation);
+                cli.addArguments(args);
+                cli.setWorkingDirectory(workingDirectory);
+                return cli;
+            }
+        };
+        jar.setUseToolProvider(useToolProvider);
+        return jar;
+    }
+
+    /**
+     * Mimics the <code>findTool(String)</code> method of a Maven toolchain.
+     */
+    public static class FakeToolchain {
+
+        private String tool;
+
+        public String findTool(String toolName) {
+            return tool;
+        }
+    }
+}
@@ -192,4 +192,35 @@ public class BourneShellTest {
                 "'chmod' ' ' '|' '&&' '||' ';' ';;' '&' '()' '<' '<<' '>' '>>' '*' '?' '[' ']' '{' '}' '`' '#'",
                 lines.get(2));
     }
+
+    @Test
+    public void testQuoteOneItemWithSeveralSingleQuotes() {
+        Shell sh = newShell();
+
+        assertEquals("''", sh.quoteOneItem("", false));
+        assertEquals("''\"'\"''", sh.quoteOneItem("'", false));
+        assertEquals("'a'\"'\"'b'\"'\"''\"'\"'c'\"'\"''", sh.quoteOneItem("a'b''c'", false));
+
+        StringBuilder sb = new StringBuilder("prefix ");
+        sh.appendQuotedItem(sb, "it's", false);
+        assertEquals("prefix 'it'\"'\"'s'", sb.toString());
+    }
+
+    @Test
+    public void testOverriddenQuoteOneItemIsUsedForTheCommandLine() {
+        Shell sh = new BourneShell() {
+            @Override
+            protected String quoteOneItem(String path, boolean isExecutable) {
+                return isExecutable ? path : "\"" + path + "\"";
+            }
+        };
+
+        List<String> lines = sh.getShellCommandLine(new String[] {"a b", "c"});
+        assertEquals("/bin/sh", lines.get(0));
+        assertEquals("\"a b\" \"c\"", lines.get(2));
+
+        sh.setExecutable("ls");
+        lines = sh.getShellCommandLine(new String[] {"a"});
+        assertEquals("ls \"a\"", lines.get(2));
+    }
 }
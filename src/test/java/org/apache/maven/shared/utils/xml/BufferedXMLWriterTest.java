@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test of {@link BufferedXMLWriter}, which must produce the same output as {@link PrettyPrintXMLWriter}.
+ */
+@SuppressWarnings("deprecation")
+public class BufferedXMLWriterTest {
+
+    @Test
+    public void sameOutputAsPrettyPrintXMLWriter() throws IOException {
+        StringWriter expected = new StringWriter();
+        PrettyPrintXMLWriter prettyPrint = new PrettyPrintXMLWriter(expected, "UTF-8", "html");
+        prettyPrint.setLineSeparator("\r\n");
+        prettyPrint.setLineIndenter("\t");
+        writeDocument(prettyPrint);
+
+        StringWriter actual = new StringWriter();
+        BufferedXMLWriter buffered = new BufferedXMLWriter(actual);
+        buffered.setEncoding("UTF-8");
+        buffered.setDocType("html");
+        buffered.setLineSeparator("\r\n");
+        buffered.setLineIndenter("\t");
+        writeDocument(buffered);
+        buffered.flush();
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void deepDocumentWithDefaults() throws IOException {
+        StringWriter expected = new StringWriter();
+        writeDeepDocument(new PrettyPrintXMLWriter(expected), 100);
+
+        StringWriter actual = new StringWriter();
+        try (BufferedXMLWriter buffered = new BufferedXMLWriter(actual)) {
+            writeDeepDocument(buffered, 100);
+        }
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void outputStreamIsWrittenInUtf8() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            // mixes 1, 2, 3 and 4 byte sequences, so surrogate pairs end up split at buffer boundaries
+            text.append("aé€😀");
+        }
+
+        StringWriter expected = new StringWriter();
+        writeText(new PrettyPrintXMLWriter(expected), text.toString());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BufferedXMLWriter buffered = new BufferedXMLWriter(stream);
+        writeText(buffered, text.toString());
+        buffered.close();
+
+        assertEquals(expected.toString(), new String(stream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void unpairedSurrogatesAreReplaced() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BufferedXMLWriter buffered = new BufferedXMLWriter(stream);
+        writeText(buffered, "a\ude00b\ud83d");
+        buffered.close();
+
+        assertEquals("<root>a?b?</root>", new String(stream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void outputStreamRequiresUtf8() {
+        BufferedXMLWriter buffered = new BufferedXMLWriter(new ByteArrayOutputStream());
+        buffered.setEncoding("utf8");
+        assertThrows(IllegalArgumentException.class, () -> buffered.setEncoding("ISO-8859-1"));
+    }
+
+    @Test
+    public void failuresOfTheTargetAreThrown() throws IOException {
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+
+        BufferedXMLWriter buffered = new BufferedXMLWriter(failing);
+        buffered.startElement("root");
+        assertEquals("disk full", assertThrows(IOException.class, buffered::flush).getMessage());
+
+        BufferedXMLWriter overflowing = new BufferedXMLWriter(failing);
+        overflowing.startElement("root");
+        char[] large = new char[10000];
+        assertThrows(IOException.class, () -> overflowing.writeText(new String(large)));
+    }
+
+    @Test
+    public void illegalUsage() throws IOException {
+        BufferedXMLWriter buffered = new BufferedXMLWriter(new StringWriter());
+        assertThrows(IllegalArgumentException.class, () -> buffered.startElement(""));
+        assertThrows(IllegalStateException.class, () -> buffered.addAttribute("a", "b"));
+        buffered.startElement("root");
+        assertThrows(IllegalStateException.class, () -> buffered.setDocType("html"));
+    }
+
+    @Test
+    public void writeDeepXpp3Dom() throws IOException {
+        Xpp3Dom root = new Xpp3Dom("root");
+        Xpp3Dom parent = root;
+        for (int i = 0; i < 100000; i++) {
+            Xpp3Dom child = new Xpp3Dom("e");
+            parent.addChild(child);
+            parent = child;
+        }
+        parent.setValue("bottom");
+
+        StringWriter writer = new StringWriter();
+        try (BufferedXMLWriter xmlWriter = new BufferedXMLWriter(writer)) {
+            xmlWriter.setLineIndenter("");
+            Xpp3DomWriter.write(xmlWriter, root);
+        }
+        String string = writer.toString();
+        assertTrue(string.startsWith("<root>\n<e>\n<e>"));
+        assertTrue(string.contains("\n<e>bottom</e>\n</e>"));
+        assertTrue(string.endsWith("</e>\n</root>"));
+    }
+
+    private static void writeDocument(XMLWriter writer) throws IOException {
+        writer.startElement("html");
+        writer.addAttribute("lang", "en \"quoted\" & <escaped>\r\n");
+        writer.startElement("head");
+        writer.startElement("title");
+        writer.writeText("Title & <more>");
+        writer.endElement();
+        writer.startElement("meta");
+        writer.addAttribute("name", "generator");
+        writer.endElement();
+        writer.endElement();
+        writer.startElement("body");
+        writer.writeMarkup("<!-- markup -->");
+        writer.startElement("p");
+        writer.writeText("a longer text with <markup> written as CDATA");
+        writer.endElement();
+        writer.startElement("div");
+        writer.startElement("br");
+        writer.endElement();
+        writer.endElement();
+        writer.endElement();
+        writer.endElement();
+    }
+
+    private static void writeDeepDocument(XMLWriter writer, int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            writer.startElement("level" + i);
+            writer.addAttribute("depth", String.valueOf(i));
+        }
+        writer.writeText("bottom");
+        for (int i = 0; i < depth; i++) {
+            writer.endElement();
+            writer.startElement("sibling");
+            writer.endElement();
+        }
+    }
+
+    private static void writeText(XMLWriter writer, String text) throws IOException {
+        writer.startElement("root");
+        writer.writeText(text);
+        writer.endElement();
+    }
+}
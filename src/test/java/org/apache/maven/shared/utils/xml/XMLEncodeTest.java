@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.utils.xml;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class XMLEncodeTest {
+
+    @Test
+    public void textWithoutMarkupIsWrittenAsIs() throws IOException {
+        assertEquals("", encodeText(null));
+        assertEquals("plain > text \"q\" 'a'\r\n", encodeText("plain > text \"q\" 'a'\r\n"));
+        assertEquals("]]> without markup", encodeText("]]> without markup"));
+    }
+
+    @Test
+    public void shortTextIsEncoded() throws IOException {
+        assertEquals("a&lt;b&gt;", encodeText("a<b>"));
+        assertEquals("&amp;", encodeText("&"));
+        // line feeds are dropped from encoded text
+        assertEquals("a&amp;b\"c", encodeText("a&b\n\"c"));
+    }
+
+    @Test
+    public void longTextIsWrittenAsCdata() throws IOException {
+        assertEquals("<![CDATA[this is a longer <text>\n]]>", encodeText("this is a longer <text>\n"));
+        assertEquals("long text with ]]&gt; and &lt;tag&gt;", encodeText("long text with ]]> and <tag>"));
+        assertEquals("&lt;tag&gt; then ]]&gt;", encodeText("<tag> then ]]>"));
+    }
+
+    @Test
+    public void attributeIsQuotedAndEncoded() throws IOException {
+        assertEquals(
+                "\"a&quot;b&apos;c&lt;d&gt;&amp;e&#10;f&#13;g&#10;h&#13;\"",
+                encodeAttribute("a\"b'c<d>&e\r\nf\rg\nh\r", '"'));
+        assertEquals("'x&quot;y&apos;'", encodeAttribute("x\"y'", '\''));
+        assertEquals("\"plain value\"", encodeAttribute("plain value", '"'));
+        assertEquals("\"\"", encodeAttribute("", '"'));
+    }
+
+    @Test
+    public void textAsPcdataKeepsQuotesAndCarriageReturns() throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLEncode.xmlEncodeTextAsPCDATA("a\"b'c\rd\ne<", false, '"', writer);
+        assertEquals("a\"b'c\rde&lt;", writer.toString());
+    }
+
+    private static String encodeText(String text) throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLEncode.xmlEncodeText(text, writer);
+        return writer.toString();
+    }
+
+    private static String encodeAttribute(String value, char quoteChar) throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLEncode.xmlEncodeTextAsPCDATA(value, true, quoteChar, writer);
+        return writer.toString();
+    }
+}
@@ -25,13 +25,21 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.maven.shared.utils.xml.pull.XmlPullParserException;
 import org.junit.jupiter.api.Test;
+import org.xml.sax.XMLReader;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
@@ -89,6 +97,106 @@ public class Xpp3DomBuilderTest {
         }
     }
 
+    @Test
+    public void readerIsReusedByTheSameThread() throws Exception {
+        XMLReader reader = XmlReaderPool.acquire();
+        XMLReader nested = XmlReaderPool.acquire();
+        assertNotSame(reader, nested);
+        XmlReaderPool.release(nested);
+        XmlReaderPool.release(reader);
+
+        assertSame(reader, XmlReaderPool.acquire());
+        XmlReaderPool.release(reader);
+    }
+
+    @Test
+    public void readerIsReusableAfterMalformedXml() {
+        assertThrows(XmlPullParserException.class, () -> Xpp3DomBuilder.build(new StringReader("<root><el></root>")));
+
+        Xpp3Dom dom = Xpp3DomBuilder.build(new StringReader(createDomString()));
+        assertEquals("element3value", dom.getChild("element2").getChild("element3").getValue());
+    }
+
+    @Test
+    public void saxDriverPropertyIsIgnored() {
+        String key = "org.xml.sax.driver";
+        String old = System.getProperty(key);
+        System.setProperty(key, "does.not.Exist");
+        try {
+            Xpp3Dom dom = Xpp3DomBuilder.build(new StringReader("<root><el>value</el></root>"));
+            assertEquals("value", dom.getChild("el").getValue());
+            assertEquals("does.not.Exist", System.getProperty(key));
+        } finally {
+            if (old == null) {
+                System.clearProperty(key);
+            } else {
+                System.setProperty(key, old);
+            }
+        }
+    }
+
+    @Test
+    public void textOfLeavesOnly() {
+        Xpp3Dom dom = Xpp3DomBuilder.build(
+                new StringReader("<r>before<a>x &amp; <![CDATA[<y>]]> z</a>between<b/><c><d>1</d>2</c>after</r>"));
+
+        assertEquals("", dom.getValue());
+        assertEquals("x & <y> z", dom.getChild("a").getValue());
+        assertEquals("", dom.getChild("b").getValue());
+        assertEquals("", dom.getChild("c").getValue());
+        assertEquals("1", dom.getChild("c").getChild("d").getValue());
+    }
+
+    @Test
+    public void buildFilteredSelectsSubtrees() {
+        String pom = "<project><modelVersion>4.0.0</modelVersion>"
+                + "<dependencies><dependency><artifactId>a</artifactId></dependency>"
+                + "<dependency><artifactId>b</artifactId></dependency></dependencies>"
+                + "<build><plugins><plugin><artifactId>p</artifactId><configuration><x>1</x></configuration></plugin>"
+                + "</plugins></build><dependencies><dependency><artifactId>c</artifactId></dependency></dependencies>"
+                + "</project>";
+
+        List<Xpp3Dom> dependencies = Xpp3DomBuilder.buildFiltered(new StringReader(pom), "/project/dependencies");
+        assertEquals(2, dependencies.size());
+        assertEquals(2, dependencies.get(0).getChildCount());
+        assertEquals("b", dependencies.get(0).getChild(1).getChild("artifactId").getValue());
+        assertEquals("c", dependencies.get(1).getChild("dependency").getChild("artifactId").getValue());
+        assertNull(dependencies.get(0).getParent());
+
+        List<Xpp3Dom> selected = Xpp3DomBuilder.buildFiltered(
+                new StringReader(pom), "project/*/plugin/configuration", "/project/build/plugins/*/configuration");
+        assertEquals(1, selected.size());
+        assertEquals("1", selected.get(0).getChild("x").getValue());
+
+        selected = Xpp3DomBuilder.buildFiltered(new StringReader(pom), "/project/*/*", "/project/build/plugins/plugin");
+        assertEquals(4, selected.size());
+        assertEquals("plugins", selected.get(2).getName());
+        assertEquals("p", selected.get(2).getChild("plugin").getChild("artifactId").getValue());
+
+        assertEquals(0, Xpp3DomBuilder.buildFiltered(new StringReader(pom), "/pom/dependencies").size());
+    }
+
+    @Test
+    public void buildFilteredHandsOverSubtreesWhileParsing() {
+        String truncated = "<project><dependencies><dependency>a</dependency><dependency>b</dependency>";
+        List<String> values = new ArrayList<>();
+
+        assertThrows(
+                XmlPullParserException.class,
+                () -> Xpp3DomBuilder.buildFiltered(
+                        new StringReader(truncated),
+                        dom -> values.add(dom.getValue()),
+                        "/project/dependencies/dependency"));
+        assertEquals(Arrays.asList("a", "b"), values);
+    }
+
+    @Test
+    public void buildFilteredRejectsEmptyNames() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> Xpp3DomBuilder.buildFiltered(new StringReader("<a/>"), "/a//b"));
+    }
+
     @Test
     public void attributeEscaping() throws IOException, XmlPullParserException {
         String s = getAttributeEncodedString();
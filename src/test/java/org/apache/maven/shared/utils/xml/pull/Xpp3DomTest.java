@@ -19,16 +19,24 @@
 package org.apache.maven.shared.utils.xml.pull;
 
 import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 import org.apache.maven.shared.utils.xml.Xpp3Dom;
 import org.apache.maven.shared.utils.xml.Xpp3DomBuilder;
 import org.junit.jupiter.api.Test;
 
 import static org.apache.maven.shared.utils.xml.Xpp3Dom.mergeXpp3Dom;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author Kristian Rosenvold
@@ -164,6 +172,182 @@ public class Xpp3DomTest {
         assertNotEquals(dom, other);
     }
 
+    @Test
+    public void getChildReturnsLastChildOfNameBelowAndAboveIndexThreshold() {
+        Xpp3Dom dom = new Xpp3Dom("root");
+        for (int i = 0; i < 20; i++) {
+            dom.addChild(createElement("child" + (i % 5), "v" + i));
+            for (int j = 0; j <= Math.min(i, 4); j++) {
+                int last = i - ((i - j) % 5);
+                assertEquals("v" + last, dom.getChild("child" + j).getValue(), "after " + (i + 1) + " children");
+            }
+        }
+        assertEquals(null, dom.getChild("missing"));
+    }
+
+    @Test
+    public void removeChildUpdatesLookupByName() {
+        Xpp3Dom dom = new Xpp3Dom("root");
+        for (int i = 0; i < 10; i++) {
+            dom.addChild(createElement("child" + i, "v" + i));
+        }
+
+        dom.removeChild(9);
+        assertEquals(null, dom.getChild("child9"));
+        dom.removeChild(0);
+        assertEquals(null, dom.getChild("child0"));
+        assertEquals("v5", dom.getChild("child5").getValue());
+        assertEquals(8, dom.getChildCount());
+    }
+
+    @Test
+    public void removeChildOfRepeatedNameKeepsLookupByName() {
+        for (int count : new int[] {3, 12}) {
+            Xpp3Dom dom = new Xpp3Dom("root");
+            for (int i = 0; i < count; i++) {
+                dom.addChild(createElement("child", "v" + i));
+            }
+
+            // removing an earlier child leaves the last one
+            dom.removeChild(0);
+            assertEquals("v" + (count - 1), dom.getChild("child").getValue());
+            // removing the last one leaves none, as before
+            dom.removeChild(dom.getChildCount() - 1);
+            assertEquals(null, dom.getChild("child"), count + " children");
+            assertEquals(count - 2, dom.getChildCount());
+
+            dom.addChild(createElement("child", "added"));
+            assertEquals("added", dom.getChild("child").getValue());
+        }
+    }
+
+    @Test
+    public void attributesKeepOrderAndEqualityIgnoresIt() {
+        Xpp3Dom dom = build("<root b='2' a='1' c='3'/>");
+        assertArrayEquals(new String[] {"b", "a", "c"}, dom.getAttributeNames());
+
+        dom.setAttribute("a", "one");
+        assertEquals("one", dom.getAttribute("a"));
+        assertArrayEquals(new String[] {"b", "a", "c"}, dom.getAttributeNames());
+        // written in the same order
+        assertTrue(dom.toString().endsWith("<root b=\"2\" a=\"one\" c=\"3\"></root>"), dom.toString());
+
+        Xpp3Dom other = build("<root c='3' a='one' b='2'/>");
+        assertEquals(dom, other);
+        assertEquals(dom.hashCode(), other.hashCode());
+        assertNotEquals(dom, build("<root c='3' a='1' b='2'/>"));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        Xpp3Dom dom = build("<root a='1'><leaf>x</leaf><node b='2'><leaf>y</leaf></node></root>");
+        Xpp3Dom copy = new Xpp3Dom(dom);
+        assertEquals("y", copy.getChild("node").getChild("leaf").getValue());
+        assertEquals("2", copy.getChild("node").getAttribute("b"));
+
+        copy.setAttribute("a", "changed");
+        copy.getChild("node").addChild(new Xpp3Dom("added"));
+        assertEquals("1", dom.getAttribute("a"));
+        assertEquals(1, dom.getChild("node").getChildCount());
+    }
+
+    @Test
+    public void frozenDomIsImmutable() {
+        Xpp3Dom dom = build("<root a='1'><child><leaf>x</leaf></child></root>").freeze();
+        Xpp3Dom leaf = dom.getChild("child").getChild("leaf");
+
+        assertTrue(leaf.isFrozen());
+        assertThrows(UnsupportedOperationException.class, () -> leaf.setValue("y"));
+        assertThrows(UnsupportedOperationException.class, () -> dom.setAttribute("a", "2"));
+        assertThrows(UnsupportedOperationException.class, () -> dom.addChild(new Xpp3Dom("other")));
+        assertThrows(UnsupportedOperationException.class, () -> dom.removeChild(0));
+        assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<Xpp3Dom> it = dom.iterator();
+            it.next();
+            it.remove();
+        });
+
+        Xpp3Dom copy = new Xpp3Dom(dom);
+        assertFalse(copy.getChild("child").isFrozen());
+        copy.getChild("child").getChild("leaf").setValue("y");
+        assertEquals("x", leaf.getValue());
+    }
+
+    @Test
+    public void mergeSharesFrozenRecessiveChildren() {
+        Xpp3Dom parent = build("<configuration><a><x>1</x></a><b><y>2</y></b><list><item>p</item></list>"
+                        + "</configuration>")
+                .freeze();
+        String parentString = parent.toString();
+
+        Xpp3Dom child1 = build("<configuration><b><z>3</z></b><list combine.children='append'><item>c</item></list>"
+                + "</configuration>");
+        Xpp3Dom merged1 = mergeXpp3Dom(child1, parent);
+        Xpp3Dom child2 = build("<configuration><c>4</c></configuration>");
+        Xpp3Dom merged2 = mergeXpp3Dom(child2, parent);
+
+        assertSame(parent.getChild("a"), merged1.getChild("a"));
+        assertSame(parent.getChild("a"), merged2.getChild("a"));
+        assertSame(parent.getChild("b"), merged2.getChild("b"));
+        assertSame(parent, parent.getChild("a").getParent());
+        assertEquals("2", merged1.getChild("b").getChild("y").getValue());
+        assertEquals("3", merged1.getChild("b").getChild("z").getValue());
+        assertSame(parent.getChild("list").getChild(0), merged1.getChild("list").getChild(0));
+        assertEquals("c", merged1.getChild("list").getChild(1).getValue());
+        assertEquals("4", merged2.getChild("c").getValue());
+        assertEquals(parentString, parent.toString());
+    }
+
+    @Test
+    public void mergeCopiesFrozenDominantOnWrite() {
+        Xpp3Dom dominant = build("<configuration><a><x>1</x></a><b>keep</b></configuration>").freeze();
+        String dominantString = dominant.toString();
+        Xpp3Dom recessive = build("<configuration><a><y>2</y></a><c>3</c></configuration>");
+
+        Xpp3Dom merged = mergeXpp3Dom(dominant, recessive);
+
+        assertNotSame(dominant, merged);
+        assertFalse(merged.isFrozen());
+        assertSame(dominant.getChild("b"), merged.getChild("b"));
+        assertEquals("1", merged.getChild("a").getChild("x").getValue());
+        assertEquals("2", merged.getChild("a").getChild("y").getValue());
+        assertEquals("3", merged.getChild("c").getValue());
+        assertSame(merged, merged.getChild("a").getParent());
+        assertEquals(dominantString, dominant.toString());
+
+        Xpp3Dom unfrozen = mergeXpp3Dom(new Xpp3Dom(dominant), recessive);
+        assertEquals(unfrozen.getChild("a"), merged.getChild("a"));
+    }
+
+    @Test
+    public void mergePairsRepeatedChildrenInOrder() {
+        Xpp3Dom dominant = new Xpp3Dom("configuration");
+        Xpp3Dom recessive = new Xpp3Dom("configuration");
+        for (int i = 0; i < 1000; i++) {
+            dominant.addChild(createElement(i % 2 == 0 ? "arg" : "execution", "d" + i));
+        }
+        for (int i = 0; i < 1500; i++) {
+            Xpp3Dom child = createElement(i % 3 == 0 ? "execution" : "arg", "r" + i);
+            child.setAttribute("index", String.valueOf(i));
+            recessive.addChild(child);
+        }
+        recessive.addChild(createElement("other", "o"));
+
+        Xpp3Dom merged = mergeXpp3Dom(dominant, recessive);
+
+        assertEquals(1001, merged.getChildCount());
+        Xpp3Dom[] args = merged.getChildren("arg");
+        Xpp3Dom[] executions = merged.getChildren("execution");
+        assertEquals(500, args.length);
+        assertEquals(500, executions.length);
+        // the n-th dominant child of a name is merged with the n-th recessive child of that name
+        assertEquals("d2", args[1].getValue());
+        assertEquals("2", args[1].getAttribute("index"));
+        assertEquals("d3", executions[1].getValue());
+        assertEquals("3", executions[1].getAttribute("index"));
+        assertEquals("o", merged.getChild("other").getValue());
+    }
+
     @Test
     public void dominantWinsCollections() throws XmlPullParserException {
         Xpp3Dom parent = build("<root><entries><entry>uno</entry><entry>dos</entry></entries></root>");
@@ -244,4 +428,78 @@ public class Xpp3DomTest {
         String dupes = "<root><baz>x</baz><baz>y</baz></root>";
         assertEquals("y", build(dupes).getChild("baz").getValue());
     }
+
+    @Test
+    public void toStringWritesAttributesChildrenAndValues() throws XmlPullParserException {
+        Xpp3Dom dom = build("<root a=\"1\" b=\"&lt;2&gt;\"><empty/><child>x &amp; y</child><child/>"
+                + "<nested><deeper c=\"3\">z</deeper></nested></root>");
+        dom.getChild("empty").setValue(null);
+
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<root a=\"1\" b=\"&lt;2&gt;\">\n"
+                + "  <empty/>\n"
+                + "  <child>x &amp; y</child>\n"
+                + "  <child></child>\n"
+                + "  <nested>\n"
+                + "    <deeper c=\"3\">z</deeper>\n"
+                + "  </nested>\n"
+                + "</root>";
+        assertEquals(expected, dom.toString());
+        // like PrettyPrintXMLWriter, the end tag of markup goes to the next line
+        String unescaped = expected.replace("<child>x &amp; y</child>", "<child>x & y\n  </child>")
+                .replace("<child></child>", "<child>\n  </child>")
+                .replace("<deeper c=\"3\">z</deeper>", "<deeper c=\"3\">z\n    </deeper>");
+        assertEquals(unescaped, dom.toUnescapedString());
+    }
+
+    @Test
+    public void frozenHashCodeIsUnchanged() throws XmlPullParserException {
+        String xml = "<root a=\"1\"><child b=\"2\">x</child><child/></root>";
+        Xpp3Dom mutable = build(xml);
+        Xpp3Dom frozen = build(xml).freeze();
+
+        assertEquals(mutable.hashCode(), frozen.hashCode());
+        assertEquals(mutable.hashCode(), frozen.hashCode());
+        assertEquals(mutable, frozen);
+        assertEquals(frozen, mutable);
+    }
+
+    @Test
+    public void frozenEquality() throws XmlPullParserException {
+        Xpp3Dom dom = build("<root><child>x</child><other a=\"1\"/></root>").freeze();
+
+        assertEquals(dom, build("<root><child>x</child><other a=\"1\"/></root>").freeze());
+        assertNotEquals(dom, build("<root><child>y</child><other a=\"1\"/></root>").freeze());
+        assertNotEquals(dom, build("<root><child>x</child><other a=\"2\"/></root>").freeze());
+        assertNotEquals(dom, build("<root><other a=\"1\"/><child>x</child></root>").freeze());
+
+        Set<Xpp3Dom> set = new HashSet<>();
+        set.add(dom);
+        assertTrue(set.contains(build("<root><child>x</child><other a=\"1\"/></root>").freeze()));
+        assertFalse(set.contains(build("<root><child>x</child></root>").freeze()));
+    }
+
+    @Test
+    public void digest() throws XmlPullParserException {
+        Xpp3Dom dom = build("<root a=\"1\" b=\"2\"><child>x</child><child/></root>");
+        String digest = dom.digest();
+
+        assertEquals(64, digest.length());
+        // stable across runs and JVMs
+        assertEquals("b840da968f56d26a7c172549e6969310e9bee49da529d32e4021bc2c3c44e903", digest);
+        assertEquals(digest, build("<root b=\"2\" a=\"1\"><child>x</child><child/></root>").digest());
+        assertEquals(digest, dom.freeze().digest());
+        assertEquals(digest, dom.digest());
+
+        assertNotEquals(digest, build("<root a=\"1\" b=\"2\"><child>x</child></root>").digest());
+        assertNotEquals(digest, build("<root a=\"1\" b=\"3\"><child>x</child><child/></root>").digest());
+        assertNotEquals(digest, build("<root a=\"1\" b=\"2\"><child/><child>x</child></root>").digest());
+        // the strings are delimited
+        assertNotEquals(build("<a b=\"cd\"/>").digest(), build("<a bc=\"d\"/>").digest());
+
+        Xpp3Dom unset = new Xpp3Dom("root");
+        Xpp3Dom empty = new Xpp3Dom("root");
+        empty.setValue("");
+        assertEquals(unset.equals(empty), unset.digest().equals(empty.digest()));
+    }
 }